@@ -16,21 +16,45 @@
 
 package org.springframework.cloud.stream.binder.gemfire;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import com.gemstone.gemfire.DataSerializer;
 import com.gemstone.gemfire.cache.Operation;
+import com.gemstone.gemfire.cache.Region;
+import com.gemstone.gemfire.cache.RegionDestroyedException;
 import com.gemstone.gemfire.cache.asyncqueue.AsyncEvent;
 import com.gemstone.gemfire.cache.asyncqueue.AsyncEventListener;
 import com.gemstone.gemfire.cache.asyncqueue.AsyncEventQueue;
+import com.gemstone.gemfire.cache.wan.EventSequenceID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.expression.Expression;
 import org.springframework.integration.endpoint.ExpressionMessageProducerSupport;
 import org.springframework.integration.gemfire.inbound.CacheListeningMessageProducer;
+import org.springframework.integration.support.MessageBuilderFactory;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.MessagingException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
 
 /**
@@ -47,16 +71,64 @@ import org.springframework.util.Assert;
  * </ul>
  * A SpEL expression may be provided to generate a Message payload by evaluating
  * that expression against the {@link AsyncEvent} instance as the root object.
- * If no {@code payloadExpression} is provided, the {@code AsyncEvent} itself
- * will be the payload.
+ * If no {@code payloadExpression} is provided, the
+ * {@link AsyncEvent#getDeserializedValue() deserialized value} of the event
+ * will be the payload; this is obtained directly, without evaluating
+ * an expression.
  * <p>
+ * Once a batch of events has been published, the corresponding
+ * entries are removed from their region with a single
+ * {@link Region#removeAll} per region, unless
+ * {@link #setRemoveConsumedMessages removeConsumedMessages} is disabled.
+ * <p>
+ * In {@link #setBatchMode batch mode}, each batch is published as a
+ * single message whose payload is the list of event payloads; the
+ * headers of each event are kept in the
+ * {@link GemfireMessageChannelBinder#BATCH_HEADERS} header.
+ * Otherwise, events in a batch may be published by multiple threads; see
+ * {@link #setDispatchThreads}. {@link #processEvents} returns once
+ * the whole batch has been published.
+ * <p>
+ * With {@link #setOrderedDelivery ordered delivery}, messages are published
+ * in the order of the sequence ids assigned by their producer.
+ * <p>
+ * With {@link #setDuplicateDetection duplicate detection}, messages that
+ * were already published (for instance, redelivered after a member failure)
+ * are dropped; see {@link DuplicateMessageFilter}. A message is recorded
+ * once it has been published, so a batch that fails to publish is not
+ * dropped when it is redelivered. Dropped messages are still removed from
+ * their region, but their shared payload references are not released again.
+ * <p>
+ * Events holding a {@link MessageEnvelope} are unpacked into one event per
+ * message, keyed by the message's own {@link MessageKey}, before any
+ * other processing.
+ * <p>
+ * If a {@link SharedPayloadStore} is set, events holding a
+ * {@link MessageReference} are resolved against the store, and the
+ * reference is released once the event has been published.
+ * <p>
+ * Messages with a payload compressed by {@link SendingHandler} are
+ * decompressed with the configured {@link CompressionCodec} before
+ * they are published.
+ * <p>
+ * Messages {@link #deliver delivered} without going through the region
+ * (by {@link MessageDeliveryFunction} or local delivery in
+ * {@link SendingHandler}) are processed as a batch of
+ * {@link Operation#CREATE} events, except that they are not removed
+ * from the region.
  *
  * @author Patrick Peralta
  */
-public class AsyncEventListeningMessageProducer extends ExpressionMessageProducerSupport implements AsyncEventListener {
+public class AsyncEventListeningMessageProducer extends ExpressionMessageProducerSupport
+		implements AsyncEventListener, LocalConsumer {
 
 	private static final Logger logger = LoggerFactory.getLogger(AsyncEventListeningMessageProducer.class);
 
+	/**
+	 * Time in milliseconds to wait for events being published when stopping.
+	 */
+	private static final long SHUTDOWN_TIMEOUT = 10000;
+
 	private volatile Set<Operation> supportedOperations =
 			new HashSet<Operation>(Arrays.asList(
 					Operation.CREATE,
@@ -64,6 +136,173 @@ public class AsyncEventListeningMessageProducer extends ExpressionMessageProduce
 					Operation.PUTALL_CREATE,
 					Operation.PUTALL_UPDATE));
 
+	private volatile CompressionCodec compressionCodec = new DeflaterCompressionCodec();
+
+	private volatile boolean removeConsumedMessages = true;
+
+	private volatile int dispatchThreads = 1;
+
+	private volatile boolean batchMode = false;
+
+	private volatile boolean payloadExpressionSet = false;
+
+	private volatile boolean orderedDelivery = false;
+
+	private volatile int reorderBufferCapacity = 1000;
+
+	private volatile long reorderGapTimeout = 1000;
+
+	private volatile ReorderBuffer reorderBuffer;
+
+	private volatile SharedPayloadStore sharedPayloadStore;
+
+	private volatile boolean duplicateDetection = false;
+
+	private volatile int duplicateWindowSize = DuplicateMessageFilter.DEFAULT_WINDOW_SIZE;
+
+	private volatile DuplicateMessageFilter duplicateMessageFilter;
+
+	private volatile ScheduledExecutorService reorderExpiryExecutor;
+
+	private volatile ThreadPoolExecutor dispatchExecutor;
+
+
+	@Override
+	public void setExpressionPayload(Expression payloadExpression) {
+		super.setExpressionPayload(payloadExpression);
+		this.payloadExpressionSet = (payloadExpression != null);
+	}
+
+	/**
+	 * Set the codec used to decompress message payloads.
+	 *
+	 * @param compressionCodec compression codec
+	 */
+	public void setCompressionCodec(CompressionCodec compressionCodec) {
+		Assert.notNull(compressionCodec, "compressionCodec must not be null");
+		this.compressionCodec = compressionCodec;
+	}
+
+	/**
+	 * If {@code true} (the default), messages are removed from their
+	 * region once the batch of events they were delivered in has been
+	 * published. Otherwise messages remain in the region.
+	 *
+	 * @param removeConsumedMessages whether to remove published messages
+	 */
+	public void setRemoveConsumedMessages(boolean removeConsumedMessages) {
+		this.removeConsumedMessages = removeConsumedMessages;
+	}
+
+	/**
+	 * Set the number of threads used to publish a batch of events.
+	 * With more than one thread, events are split into lanes by the
+	 * routing hash of their {@link MessageKey}, which preserves the order
+	 * of events per partition. The default is 1, which publishes events
+	 * on the thread that delivers the batch.
+	 *
+	 * @param dispatchThreads number of threads used to publish events
+	 */
+	public void setDispatchThreads(int dispatchThreads) {
+		Assert.isTrue(dispatchThreads > 0, "dispatchThreads must be greater than zero");
+		this.dispatchThreads = dispatchThreads;
+	}
+
+	/**
+	 * If {@code true}, each batch of events is published as a single
+	 * message with a {@code List} payload. Defaults to {@code false}.
+	 *
+	 * @param batchMode whether to publish a message per batch
+	 */
+	public void setBatchMode(boolean batchMode) {
+		this.batchMode = batchMode;
+	}
+
+	/**
+	 * If {@code true}, messages are published in the order of the sequence
+	 * ids assigned by their producer, using a {@link ReorderBuffer}.
+	 * Buffered messages have already been removed from their region if
+	 * {@link #setRemoveConsumedMessages removeConsumedMessages} is enabled.
+	 * Ordered delivery does not apply in batch mode, and batches are
+	 * published by a single thread. Defaults to {@code false}.
+	 *
+	 * @param orderedDelivery whether to publish messages in producer order
+	 */
+	public void setOrderedDelivery(boolean orderedDelivery) {
+		this.orderedDelivery = orderedDelivery;
+	}
+
+	/**
+	 * Set the maximum number of messages buffered per producer for ordered delivery.
+	 *
+	 * @param reorderBufferCapacity maximum number of buffered messages per producer
+	 */
+	public void setReorderBufferCapacity(int reorderBufferCapacity) {
+		this.reorderBufferCapacity = reorderBufferCapacity;
+	}
+
+	/**
+	 * Set the time in milliseconds after which a gap in the sequence of
+	 * a producer is skipped for ordered delivery.
+	 *
+	 * @param reorderGapTimeout gap timeout in milliseconds
+	 */
+	public void setReorderGapTimeout(long reorderGapTimeout) {
+		this.reorderGapTimeout = reorderGapTimeout;
+	}
+
+	/**
+	 * Set the store that holds messages shared by the consumer groups of
+	 * the binding. If set, references to shared messages are resolved, and
+	 * released once consumed.
+	 *
+	 * @param sharedPayloadStore shared payload store
+	 */
+	public void setSharedPayloadStore(SharedPayloadStore sharedPayloadStore) {
+		this.sharedPayloadStore = sharedPayloadStore;
+	}
+
+	/**
+	 * Set whether messages that were already published are dropped.
+	 * Defaults to {@code false}.
+	 *
+	 * @param duplicateDetection if {@code true}, duplicate messages are dropped
+	 */
+	public void setDuplicateDetection(boolean duplicateDetection) {
+		this.duplicateDetection = duplicateDetection;
+	}
+
+	/**
+	 * Set the number of sequence ids tracked per producer for duplicate detection.
+	 *
+	 * @param duplicateWindowSize number of sequence ids tracked per producer
+	 */
+	public void setDuplicateWindowSize(int duplicateWindowSize) {
+		this.duplicateWindowSize = duplicateWindowSize;
+	}
+
+	/**
+	 * Return the filter used for duplicate detection; its counters
+	 * report the number of duplicate, missing and late messages.
+	 *
+	 * @return duplicate message filter, or {@code null} if duplicate
+	 * detection is disabled or this producer has not been started
+	 */
+	public DuplicateMessageFilter getDuplicateMessageFilter() {
+		return this.duplicateMessageFilter;
+	}
+
+	/**
+	 * Return the reorder buffer used for ordered delivery; its counters
+	 * report the number of buffered messages, reordering delay and
+	 * skipped gaps.
+	 *
+	 * @return reorder buffer, or {@code null} if ordered delivery is
+	 * disabled or this producer is not running
+	 */
+	public ReorderBuffer getReorderBuffer() {
+		return this.reorderBuffer;
+	}
 
 	/**
 	 * Set the list of operations that will cause a message to be published.
@@ -82,27 +321,629 @@ public class AsyncEventListeningMessageProducer extends ExpressionMessageProduce
 
 	@Override
 	public boolean processEvents(List<AsyncEvent> events) {
+		publish(events, this.removeConsumedMessages);
+		return true;
+	}
+
+	@Override
+	public void deliver(Region<?, ?> region, Map<?, Message<?>> messages) {
+		List<AsyncEvent> events = new ArrayList<>(messages.size());
+		for (Map.Entry<?, Message<?>> entry : messages.entrySet()) {
+			events.add(new DeliveredEvent(region, entry.getKey(), entry.getValue()));
+		}
+		publish(events, false);
+	}
+
+	/**
+	 * Publish a batch of events and optionally remove them from their regions.
+	 *
+	 * @param events events
+	 * @param remove whether to remove consumed messages from their regions
+	 */
+	private void publish(List<AsyncEvent> events, boolean remove) {
+		List<AsyncEvent> supported = new ArrayList<>(events.size());
 		for (AsyncEvent event : events) {
 			if (this.supportedOperations.contains(event.getOperation())) {
+				supported.add(event);
+			}
+		}
+		supported = unpackEnvelopes(supported);
+		List<AsyncEvent> accepted = filterDuplicates(supported);
+
+		ThreadPoolExecutor dispatchExecutor = this.dispatchExecutor;
+		if (this.batchMode) {
+			if (!accepted.isEmpty()) {
+				publishBatch(accepted);
+			}
+		}
+		else if (dispatchExecutor != null && this.reorderBuffer == null && accepted.size() > 1) {
+			dispatchInParallel(dispatchExecutor, accepted);
+		}
+		else {
+			for (AsyncEvent event : accepted) {
 				processEvent(event);
 			}
 		}
-		return true;
+
+		if (remove) {
+			removeConsumedMessages(supported, accepted);
+		}
+	}
+
+	/**
+	 * Replace each event holding a {@link MessageEnvelope} with an event
+	 * per message in the envelope, keyed by the message key.
+	 *
+	 * @param events events
+	 * @return events with envelopes unpacked, or the given list if no
+	 * event holds an envelope
+	 */
+	private List<AsyncEvent> unpackEnvelopes(List<AsyncEvent> events) {
+		List<AsyncEvent> unpacked = null;
+		for (int i = 0; i < events.size(); i++) {
+			AsyncEvent event = events.get(i);
+			MessageEnvelope envelope = MessageEnvelope.unwrap(event.getDeserializedValue());
+			if (envelope != null && unpacked == null) {
+				unpacked = new ArrayList<>(events.subList(0, i));
+			}
+			if (envelope != null) {
+				List<MessageKey> keys = envelope.getKeys();
+				List<Message<?>> messages = envelope.getMessages();
+				for (int j = 0; j < keys.size(); j++) {
+					unpacked.add(new EnvelopedEvent(event, keys.get(j), messages.get(j), j == 0));
+				}
+			}
+			else if (unpacked != null) {
+				unpacked.add(event);
+			}
+		}
+		return unpacked == null ? events : unpacked;
+	}
+
+	/**
+	 * Return the events that are not duplicates of messages already
+	 * published or of earlier events in the list, or all events if
+	 * duplicate detection is disabled. Events are not recorded as
+	 * published; see {@link #markPublished}.
+	 *
+	 * @param events events to filter
+	 * @return events to publish
+	 */
+	private List<AsyncEvent> filterDuplicates(List<AsyncEvent> events) {
+		DuplicateMessageFilter filter = this.duplicateMessageFilter;
+		if (filter == null) {
+			return events;
+		}
+		Set<Object> keys = new HashSet<>();
+		List<AsyncEvent> accepted = null;
+		for (int i = 0; i < events.size(); i++) {
+			AsyncEvent event = events.get(i);
+			Object key = event.getKey();
+			boolean accept = !(key instanceof MessageKey) || (keys.add(key) && !filter.isDuplicate(
+					((MessageKey) key).getProducerId(), ((MessageKey) key).getSequenceId()));
+			if (!accept && accepted == null) {
+				accepted = new ArrayList<>(events.subList(0, i));
+			}
+			else if (accept && accepted != null) {
+				accepted.add(event);
+			}
+		}
+		return accepted == null ? events : accepted;
+	}
+
+	/**
+	 * Publish events using {@link #dispatchExecutor}. Events are split into
+	 * lanes by the routing hash of their {@link MessageKey}; the events in
+	 * a lane are published in order by a single thread. This method returns
+	 * once all lanes have been published.
+	 *
+	 * @param dispatchExecutor executor publishing all but one lane
+	 * @param events events to publish
+	 */
+	private void dispatchInParallel(ThreadPoolExecutor dispatchExecutor, List<AsyncEvent> events) {
+		int laneCount = Math.min(this.dispatchThreads, events.size());
+		List<List<AsyncEvent>> lanes = new ArrayList<>(laneCount);
+		for (int i = 0; i < laneCount; i++) {
+			lanes.add(new ArrayList<AsyncEvent>());
+		}
+		for (AsyncEvent event : events) {
+			lanes.get((routingHash(event) & Integer.MAX_VALUE) % laneCount).add(event);
+		}
+
+		List<Future<?>> futures = new ArrayList<>(laneCount);
+		List<AsyncEvent> callerLane = null;
+		for (final List<AsyncEvent> lane : lanes) {
+			if (lane.isEmpty()) {
+				continue;
+			}
+			if (callerLane == null) {
+				callerLane = lane;
+				continue;
+			}
+			futures.add(dispatchExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (AsyncEvent event : lane) {
+						processEvent(event);
+					}
+				}
+			}));
+		}
+
+		RuntimeException exception = null;
+		try {
+			for (AsyncEvent event : callerLane) {
+				processEvent(event);
+			}
+		}
+		catch (RuntimeException e) {
+			exception = e;
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessagingException("Interrupted while publishing events", e);
+			}
+			catch (ExecutionException e) {
+				if (exception == null) {
+					exception = e.getCause() instanceof RuntimeException
+							? (RuntimeException) e.getCause()
+							: new MessagingException("Exception publishing events", e.getCause());
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * Return the hash used to assign an event to a dispatch lane.
+	 *
+	 * @param event event
+	 * @return routing hash of the event key, or the bucket of a compact key
+	 */
+	private int routingHash(AsyncEvent event) {
+		Object key = event.getKey();
+		if (key instanceof MessageKey) {
+			return ((MessageKey) key).getRoutingHash();
+		}
+		return key instanceof Long ? CompactKeyGenerator.getBucket((Long) key) : key.hashCode();
+	}
+
+	/**
+	 * Record that an event has been published, if duplicate detection is enabled.
+	 *
+	 * @param event published event
+	 */
+	private void markPublished(AsyncEvent event) {
+		DuplicateMessageFilter filter = this.duplicateMessageFilter;
+		Object key = event.getKey();
+		if (filter != null && key instanceof MessageKey) {
+			filter.mark(((MessageKey) key).getProducerId(), ((MessageKey) key).getSequenceId());
+		}
+	}
+
+	/**
+	 * Remove messages that have been consumed from their regions, using
+	 * a single {@link Region#removeAll} per region, and release the shared
+	 * payload references of the published events.
+	 *
+	 * @param events consumed events, including dropped duplicates
+	 * @param published events that were published
+	 */
+	@SuppressWarnings("unchecked")
+	private void removeConsumedMessages(List<AsyncEvent> events, List<AsyncEvent> published) {
+		Map<Region<Object, ?>, List<Object>> consumed = new HashMap<>();
+		List<MessageKey> references = null;
+		if (this.sharedPayloadStore != null) {
+			for (AsyncEvent event : published) {
+				if (MessageReference.isReference(event.getDeserializedValue())) {
+					if (references == null) {
+						references = new ArrayList<>();
+					}
+					references.add((MessageKey) event.getKey());
+				}
+			}
+		}
+		for (AsyncEvent event : events) {
+			Object key = event.getKey();
+			if (event instanceof EnvelopedEvent) {
+				if (!((EnvelopedEvent) event).isFirst()) {
+					// the envelope entry is removed once, with its first message
+					continue;
+				}
+				key = ((EnvelopedEvent) event).getEntryKey();
+			}
+			Region<Object, ?> region = event.getRegion();
+			List<Object> keys = consumed.get(region);
+			if (keys == null) {
+				keys = new ArrayList<>();
+				consumed.put(region, keys);
+			}
+			keys.add(key);
+		}
+
+		for (Map.Entry<Region<Object, ?>, List<Object>> entry : consumed.entrySet()) {
+			Region<Object, ?> region = entry.getKey();
+			try {
+				region.removeAll(entry.getValue());
+			}
+			catch (RegionDestroyedException e) {
+				logger.debug("Region {} destroyed before consumed messages were removed", region.getName());
+			}
+		}
+		if (references != null) {
+			this.sharedPayloadStore.release(references);
+		}
 	}
 
 	private void processEvent(AsyncEvent event) {
-		this.publish(evaluatePayloadExpression(event));
+		Object payload = extractPayload(event);
+		if (payload == null) {
+			return;
+		}
+		Message<?> message = toMessage(payload);
+		Object key = event.getKey();
+		ReorderBuffer reorderBuffer = this.reorderBuffer;
+		if (reorderBuffer != null && key instanceof MessageKey) {
+			MessageKey messageKey = (MessageKey) key;
+			reorderBuffer.add(messageKey.getProducerId(), messageKey.getSequenceId(), message);
+		}
+		else {
+			sendMessage(message);
+		}
+		markPublished(event);
 	}
 
-	private void publish(Object object) {
+	/**
+	 * Return the payload for an event; this is the result of the payload
+	 * expression if one is set, otherwise the deserialized value of the event.
+	 * A reference to a message in the {@link SharedPayloadStore} is resolved,
+	 * unless a payload expression is set.
+	 *
+	 * @param event event
+	 * @return payload, or the message to publish
+	 */
+	private Object extractPayload(AsyncEvent event) {
+		if (this.payloadExpressionSet) {
+			return evaluatePayloadExpression(event);
+		}
+		Object value = event.getDeserializedValue();
+		if (this.sharedPayloadStore != null && MessageReference.isReference(value)) {
+			value = this.sharedPayloadStore.get((MessageKey) event.getKey());
+			if (value == null) {
+				logger.warn("Shared message {} was removed before it was consumed", event.getKey());
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Publish a batch of events as a single message. The payload of
+	 * the message is the list of payloads of the events; the headers
+	 * of each event's message are in the
+	 * {@link GemfireMessageChannelBinder#BATCH_HEADERS} header, in the
+	 * same order as the payloads.
+	 *
+	 * @param events events to publish
+	 */
+	private void publishBatch(List<AsyncEvent> events) {
+		List<Object> payloads = new ArrayList<>(events.size());
+		List<MessageHeaders> headers = new ArrayList<>(events.size());
+		for (AsyncEvent event : events) {
+			Object payload = extractPayload(event);
+			if (payload == null) {
+				continue;
+			}
+			Message<?> message = toMessage(payload);
+			payloads.add(message.getPayload());
+			headers.add(message.getHeaders());
+		}
+		sendMessage(getMessageBuilderFactory().withPayload(payloads)
+				.setHeader(GemfireMessageChannelBinder.BATCH_HEADERS, headers)
+				.build());
+		for (AsyncEvent event : events) {
+			markPublished(event);
+		}
+	}
+
+	/**
+	 * Return the message for the result of the payload expression,
+	 * decompressing the payload if necessary.
+	 *
+	 * @param object result of the payload expression
+	 * @return message to publish
+	 */
+	private Message<?> toMessage(Object object) {
+		return toMessage(object, this.compressionCodec, getMessageBuilderFactory());
+	}
+
+	/**
+	 * Return the message for a payload or message read from a message region,
+	 * decompressing the payload if necessary.
+	 *
+	 * @param object payload or message
+	 * @param compressionCodec codec used to decompress payloads
+	 * @param messageBuilderFactory factory for created messages
+	 * @return message to publish
+	 */
+	static Message<?> toMessage(Object object, CompressionCodec compressionCodec,
+			MessageBuilderFactory messageBuilderFactory) {
 		Message<?> message = object instanceof Message
 				? (Message<?>) object
-				: getMessageBuilderFactory().withPayload(object).build();
-		sendMessage(message);
+				: messageBuilderFactory.withPayload(object).build();
+		if (message.getHeaders().containsKey(GemfireMessageChannelBinder.COMPRESSION_HEADER)) {
+			message = decompress(message, compressionCodec, messageBuilderFactory);
+		}
+		return message;
+	}
+
+	/**
+	 * Return a message with the payload decompressed and the compression
+	 * headers removed.
+	 *
+	 * @param message message with a compressed payload
+	 * @param compressionCodec codec used to decompress the payload
+	 * @param messageBuilderFactory factory for the created message
+	 * @return message with the original payload
+	 */
+	private static Message<?> decompress(Message<?> message, CompressionCodec compressionCodec,
+			MessageBuilderFactory messageBuilderFactory) {
+		MessageHeaders headers = message.getHeaders();
+		String codec = headers.get(GemfireMessageChannelBinder.COMPRESSION_HEADER, String.class);
+		Assert.state(compressionCodec.getName().equals(codec),
+				"Message compressed with unsupported codec '" + codec + "'");
+		byte[] bytes;
+		try {
+			bytes = compressionCodec.decompress((byte[]) message.getPayload());
+		}
+		catch (IOException e) {
+			throw new MessagingException(message, "Could not decompress message payload", e);
+		}
+
+		Object payload = headers.containsKey(GemfireMessageChannelBinder.COMPRESSED_STRING_HEADER)
+				? new String(bytes, StandardCharsets.UTF_8)
+				: bytes;
+		return messageBuilderFactory.withPayload(payload)
+				.copyHeaders(headers)
+				.removeHeader(GemfireMessageChannelBinder.COMPRESSION_HEADER)
+				.removeHeader(GemfireMessageChannelBinder.COMPRESSED_STRING_HEADER)
+				.build();
+	}
+
+	@Override
+	protected void doStart() {
+		super.doStart();
+		if (this.dispatchThreads > 1 && this.dispatchExecutor == null) {
+			// the thread delivering the batch publishes one lane itself
+			int threads = this.dispatchThreads - 1;
+			this.dispatchExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new CustomizableThreadFactory("gemfire-binder-dispatch-"));
+		}
+		if (this.duplicateDetection && this.duplicateMessageFilter == null) {
+			this.duplicateMessageFilter = new DuplicateMessageFilter(this.duplicateWindowSize,
+					DuplicateMessageFilter.DEFAULT_MAX_PRODUCERS);
+		}
+		if (this.orderedDelivery && this.reorderBuffer == null) {
+			final ReorderBuffer reorderBuffer = new ReorderBuffer(new MessageHandler() {
+				@Override
+				public void handleMessage(Message<?> message) {
+					sendMessage(message);
+				}
+			}, this.reorderBufferCapacity, this.reorderGapTimeout, ReorderBuffer.DEFAULT_MAX_PRODUCERS);
+			this.reorderExpiryExecutor = Executors.newSingleThreadScheduledExecutor(
+					new CustomizableThreadFactory("gemfire-binder-reorder-"));
+			this.reorderExpiryExecutor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						reorderBuffer.expire();
+					}
+					catch (Exception e) {
+						logger.error("Exception publishing reordered messages", e);
+					}
+				}
+			}, this.reorderGapTimeout, this.reorderGapTimeout, TimeUnit.MILLISECONDS);
+			this.reorderBuffer = reorderBuffer;
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		super.doStop();
+		if (this.dispatchExecutor != null) {
+			// wait for lanes in flight, so that no events are published
+			// once this endpoint is stopped and its region closed
+			this.dispatchExecutor.shutdown();
+			try {
+				this.dispatchExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.dispatchExecutor = null;
+		}
+		if (this.reorderExpiryExecutor != null) {
+			this.reorderExpiryExecutor.shutdown();
+			this.reorderExpiryExecutor = null;
+		}
+		if (this.reorderBuffer != null) {
+			try {
+				this.reorderBuffer.releaseAll();
+			}
+			catch (Exception e) {
+				logger.error("Exception publishing reordered messages", e);
+			}
+			this.reorderBuffer = null;
+		}
 	}
 
 	@Override
 	public void close() {
 	}
 
+	/**
+	 * Return the serialized form of a message, for events that
+	 * hold a message that was not read from a region.
+	 *
+	 * @param message message
+	 * @return serialized message
+	 */
+	private static byte[] serialize(Message<?> message) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DataSerializer.writeObject(message, new DataOutputStream(bytes));
+		}
+		catch (IOException e) {
+			throw new MessagingException(message, "Could not serialize message", e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Event for a message unpacked from a {@link MessageEnvelope}. The region,
+	 * operation and callback argument are those of the envelope's event.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final class EnvelopedEvent implements AsyncEvent {
+
+		private final AsyncEvent envelopeEvent;
+
+		private final MessageKey key;
+
+		private final Message<?> message;
+
+		private final boolean first;
+
+		private EnvelopedEvent(AsyncEvent envelopeEvent, MessageKey key, Message<?> message, boolean first) {
+			this.envelopeEvent = envelopeEvent;
+			this.key = key;
+			this.message = message;
+			this.first = first;
+		}
+
+		/**
+		 * Return whether this is the first message of the envelope.
+		 *
+		 * @return {@code true} for the first message
+		 */
+		private boolean isFirst() {
+			return this.first;
+		}
+
+		/**
+		 * Return the key of the region entry holding the envelope.
+		 *
+		 * @return envelope entry key
+		 */
+		private Object getEntryKey() {
+			return this.envelopeEvent.getKey();
+		}
+
+		@Override
+		public Region getRegion() {
+			return this.envelopeEvent.getRegion();
+		}
+
+		@Override
+		public Operation getOperation() {
+			return this.envelopeEvent.getOperation();
+		}
+
+		@Override
+		public Object getCallbackArgument() {
+			return this.envelopeEvent.getCallbackArgument();
+		}
+
+		@Override
+		public Object getKey() {
+			return this.key;
+		}
+
+		@Override
+		public Object getDeserializedValue() {
+			return this.message;
+		}
+
+		@Override
+		public byte[] getSerializedValue() {
+			return serialize(this.message);
+		}
+
+		@Override
+		public boolean getPossibleDuplicate() {
+			return this.envelopeEvent.getPossibleDuplicate();
+		}
+
+		@Override
+		public EventSequenceID getEventSequenceID() {
+			return this.envelopeEvent.getEventSequenceID();
+		}
+	}
+
+	/**
+	 * Event for a message {@link #deliver delivered} to this consumer
+	 * without being written to its region.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final class DeliveredEvent implements AsyncEvent {
+
+		private final Region region;
+
+		private final Object key;
+
+		private final Message<?> message;
+
+		private DeliveredEvent(Region<?, ?> region, Object key, Message<?> message) {
+			this.region = region;
+			this.key = key;
+			this.message = message;
+		}
+
+		@Override
+		public Region getRegion() {
+			return this.region;
+		}
+
+		@Override
+		public Operation getOperation() {
+			return Operation.CREATE;
+		}
+
+		@Override
+		public Object getCallbackArgument() {
+			return null;
+		}
+
+		@Override
+		public Object getKey() {
+			return this.key;
+		}
+
+		@Override
+		public Object getDeserializedValue() {
+			return this.message;
+		}
+
+		@Override
+		public byte[] getSerializedValue() {
+			return serialize(this.message);
+		}
+
+		@Override
+		public boolean getPossibleDuplicate() {
+			return false;
+		}
+
+		@Override
+		public EventSequenceID getEventSequenceID() {
+			return null;
+		}
+	}
+
 }
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gemstone.gemfire.cache.CacheListener;
+import com.gemstone.gemfire.cache.EntryEvent;
+import com.gemstone.gemfire.cache.Region;
+import com.gemstone.gemfire.cache.RegionDestroyedException;
+import com.gemstone.gemfire.cache.partition.PartitionRegionHelper;
+import com.gemstone.gemfire.cache.util.CacheListenerAdapter;
+import com.gemstone.gemfire.distributed.DistributedMember;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.expression.Expression;
+import org.springframework.integration.endpoint.ExpressionMessageProducerSupport;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * An inbound endpoint that publishes messages from a {@link CacheListener}
+ * instead of an async event queue, for streams where latency matters
+ * more than durability (see {@link DeliveryMode#LISTENER}).
+ * <p>
+ * The listener returned by {@link #getCacheListener()} must be added to
+ * the message region. For a partitioned region, a message is only
+ * published by the member hosting the primary bucket for its key. The
+ * listener hands each message off to a worker thread through a bounded
+ * queue; if the queue is full, the thread that invoked the listener waits
+ * for space, which slows down the producer. The listener thread never
+ * publishes or removes messages itself, since GemFire does not allow
+ * distributed operations from a cache listener callback. Messages
+ * waiting in the queue are lost if this member fails; they remain in
+ * the region but are not redelivered.
+ * <p>
+ * A SpEL expression may be provided to generate a Message payload by evaluating
+ * that expression against the {@link EntryEvent} instance as the root object.
+ * If no {@code payloadExpression} is provided, the
+ * {@link EntryEvent#getNewValue() new value} of the event will be the payload.
+ * <p>
+ * An entry holding a {@link MessageEnvelope} is published as one message
+ * per message in the envelope.
+ * <p>
+ * Once a message has been published, its entry is removed from the region,
+ * unless {@link #setRemoveConsumedMessages removeConsumedMessages} is disabled.
+ * <p>
+ * Messages {@link #deliver delivered} without going through the region are
+ * published on the calling thread. Since the payload expression is evaluated
+ * against an {@link EntryEvent}, if one is set such messages are written to
+ * the region instead and published by the listener.
+ *
+ * @author Patrick Peralta
+ */
+public class CacheListenerMessageProducer extends ExpressionMessageProducerSupport implements LocalConsumer {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheListenerMessageProducer.class);
+
+	/**
+	 * Timeout in milliseconds to wait for queued messages to be published
+	 * when stopping.
+	 */
+	private static final long SHUTDOWN_TIMEOUT = 10000;
+
+	private final CacheListener<Object, Object> cacheListener = new MessageListener();
+
+	private volatile CompressionCodec compressionCodec = new DeflaterCompressionCodec();
+
+	private volatile boolean removeConsumedMessages = true;
+
+	private volatile int handOffCapacity = 1024;
+
+	private volatile boolean payloadExpressionSet = false;
+
+	private volatile SharedPayloadStore sharedPayloadStore;
+
+	private volatile ThreadPoolExecutor executor;
+
+	private final AtomicLong publishedCount = new AtomicLong();
+
+	private final AtomicLong handOffWaitCount = new AtomicLong();
+
+
+	@Override
+	public void setExpressionPayload(Expression payloadExpression) {
+		super.setExpressionPayload(payloadExpression);
+		this.payloadExpressionSet = (payloadExpression != null);
+	}
+
+	/**
+	 * Set the codec used to decompress message payloads.
+	 *
+	 * @param compressionCodec compression codec
+	 */
+	public void setCompressionCodec(CompressionCodec compressionCodec) {
+		Assert.notNull(compressionCodec, "compressionCodec must not be null");
+		this.compressionCodec = compressionCodec;
+	}
+
+	/**
+	 * Set whether entries are removed from their region once they have been
+	 * published. Otherwise messages remain in the region.
+	 *
+	 * @param removeConsumedMessages if {@code true}, remove published messages
+	 */
+	public void setRemoveConsumedMessages(boolean removeConsumedMessages) {
+		this.removeConsumedMessages = removeConsumedMessages;
+	}
+
+	/**
+	 * Set the store that holds messages shared by the consumer groups of
+	 * the binding. If set, references to shared messages are resolved, and
+	 * released once consumed.
+	 *
+	 * @param sharedPayloadStore shared payload store
+	 */
+	public void setSharedPayloadStore(SharedPayloadStore sharedPayloadStore) {
+		this.sharedPayloadStore = sharedPayloadStore;
+	}
+
+	/**
+	 * Set the maximum number of messages waiting to be published by the
+	 * worker thread.
+	 *
+	 * @param handOffCapacity capacity of the hand-off queue
+	 */
+	public void setHandOffCapacity(int handOffCapacity) {
+		Assert.isTrue(handOffCapacity > 0, "handOffCapacity must be greater than zero");
+		this.handOffCapacity = handOffCapacity;
+	}
+
+	/**
+	 * Return the listener to add to the message region.
+	 *
+	 * @return cache listener
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> CacheListener<K, V> getCacheListener() {
+		return (CacheListener<K, V>) this.cacheListener;
+	}
+
+	/**
+	 * Return the number of messages published.
+	 *
+	 * @return number of published messages
+	 */
+	public long getPublishedCount() {
+		return this.publishedCount.get();
+	}
+
+	/**
+	 * Return the number of messages for which the thread that invoked
+	 * the listener had to wait because the hand-off queue was full.
+	 *
+	 * @return number of messages that waited for the hand-off queue
+	 */
+	public long getHandOffWaitCount() {
+		return this.handOffWaitCount.get();
+	}
+
+	@Override
+	public String getComponentType() {
+		return "gemfire:inbound-channel-adapter";
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void deliver(Region<?, ?> region, Map<?, Message<?>> messages) {
+		if (this.payloadExpressionSet) {
+			((Region<Object, Object>) region).putAll(messages);
+			return;
+		}
+		List<MessageKey> references = new ArrayList<>();
+		for (Map.Entry<?, Message<?>> entry : messages.entrySet()) {
+			MessageEnvelope envelope = MessageEnvelope.unwrap(entry.getValue());
+			if (envelope == null) {
+				publish(entry.getKey(), entry.getValue(), references);
+			}
+			else {
+				List<MessageKey> keys = envelope.getKeys();
+				List<Message<?>> enveloped = envelope.getMessages();
+				for (int i = 0; i < keys.size(); i++) {
+					publish(keys.get(i), enveloped.get(i), references);
+				}
+			}
+		}
+		// delivered messages are not in the region, so their references
+		// are released once published rather than once removed
+		if (!references.isEmpty()) {
+			this.sharedPayloadStore.release(references);
+		}
+	}
+
+	/**
+	 * Hand off the message for an entry event to the worker thread if this
+	 * member hosts the primary copy of the entry.
+	 *
+	 * @param event entry event
+	 */
+	private void handOff(EntryEvent<Object, Object> event) {
+		ThreadPoolExecutor executor = this.executor;
+		Region<Object, Object> region = event.getRegion();
+		Object key = event.getKey();
+		if (executor == null || !isLocalPrimary(region, key)) {
+			return;
+		}
+		Object payload = this.payloadExpressionSet ? evaluatePayloadExpression(event) : event.getNewValue();
+		executor.execute(new Delivery(region, key, payload));
+	}
+
+	/**
+	 * Return whether this member hosts the primary copy of a key.
+	 *
+	 * @param region region containing the key
+	 * @param key key
+	 * @return {@code true} if the key is hosted here and is not a redundant copy
+	 */
+	private boolean isLocalPrimary(Region<Object, Object> region, Object key) {
+		if (!PartitionRegionHelper.isPartitionedRegion(region)) {
+			return true;
+		}
+		DistributedMember primary = PartitionRegionHelper.getPrimaryMemberForKey(region, key);
+		return primary != null
+				&& primary.equals(region.getCache().getDistributedSystem().getDistributedMember());
+	}
+
+	private void publish(Region<Object, Object> region, Object key, Object payload) {
+		MessageEnvelope envelope = this.payloadExpressionSet ? null : MessageEnvelope.unwrap(payload);
+		List<MessageKey> references = new ArrayList<>();
+		if (envelope == null) {
+			publish(key, payload, references);
+		}
+		else {
+			List<MessageKey> keys = envelope.getKeys();
+			List<Message<?>> messages = envelope.getMessages();
+			for (int i = 0; i < keys.size(); i++) {
+				publish(keys.get(i), messages.get(i), references);
+			}
+		}
+		if (this.removeConsumedMessages) {
+			try {
+				region.remove(key);
+			}
+			catch (RegionDestroyedException e) {
+				logger.debug("Region {} destroyed before consumed message was removed", region.getName());
+			}
+			if (!references.isEmpty()) {
+				this.sharedPayloadStore.release(references);
+			}
+		}
+	}
+
+	/**
+	 * Publish a message, resolving it from the shared payload store if it
+	 * is a reference.
+	 *
+	 * @param key message key
+	 * @param payload entry value or evaluated payload expression
+	 * @param references list to add the key to if the message is a reference
+	 */
+	private void publish(Object key, Object payload, List<MessageKey> references) {
+		SharedPayloadStore sharedPayloadStore = this.sharedPayloadStore;
+		if (sharedPayloadStore != null && !this.payloadExpressionSet
+				&& MessageReference.isReference(payload)) {
+			references.add((MessageKey) key);
+			payload = sharedPayloadStore.get((MessageKey) key);
+		}
+		if (payload != null) {
+			Message<?> message = AsyncEventListeningMessageProducer.toMessage(payload,
+					this.compressionCodec, getMessageBuilderFactory());
+			sendMessage(message);
+			this.publishedCount.incrementAndGet();
+		}
+		else {
+			logger.warn("Shared message {} was removed before it was consumed", key);
+		}
+	}
+
+	@Override
+	protected void doStart() {
+		super.doStart();
+		if (this.executor == null) {
+			this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(this.handOffCapacity),
+					new CustomizableThreadFactory("gemfire-binder-listener-"),
+					new HandOffWaitPolicy());
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		super.doStop();
+		ThreadPoolExecutor executor = this.executor;
+		this.executor = null;
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+					logger.warn("Timed out waiting for queued messages to be published");
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+	/**
+	 * Listener that hands off created and updated entries.
+	 */
+	private class MessageListener extends CacheListenerAdapter<Object, Object> {
+
+		@Override
+		public void afterCreate(EntryEvent<Object, Object> event) {
+			handOff(event);
+		}
+
+		@Override
+		public void afterUpdate(EntryEvent<Object, Object> event) {
+			handOff(event);
+		}
+	}
+
+	/**
+	 * Policy for a full hand-off queue that makes the listener thread wait
+	 * for space, rather than publishing the message on that thread. If the
+	 * executor has been shut down, the message is left in the region.
+	 */
+	private class HandOffWaitPolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (executor.isShutdown()) {
+				logger.debug("Consumer stopped; message left in the region");
+				return;
+			}
+			handOffWaitCount.incrementAndGet();
+			try {
+				executor.getQueue().put(r);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logger.warn("Interrupted waiting to hand off message; message left in the region");
+			}
+		}
+	}
+
+	/**
+	 * Task that publishes a message handed off by the listener.
+	 */
+	private class Delivery implements Runnable {
+
+		private final Region<Object, Object> region;
+
+		private final Object key;
+
+		private final Object payload;
+
+		private Delivery(Region<Object, Object> region, Object key, Object payload) {
+			this.region = region;
+			this.key = key;
+			this.payload = payload;
+		}
+
+		@Override
+		public void run() {
+			try {
+				publish(this.region, this.key, this.payload);
+			}
+			catch (Exception e) {
+				logger.error("Exception publishing message for key " + this.key, e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import com.gemstone.gemfire.cache.Region;
+
+import org.springframework.util.Assert;
+
+/**
+ * Generator of {@code long} keys for {@link KeyEncoding#LONG}. A key
+ * holds the bucket of the message in its rightmost 16 bits and an id
+ * that is unique for the binding in the leftmost 48 bits. The bucket is
+ * computed from the {@link MessageKey#getRoutingHash() routing hash}
+ * of the message the same way GemFire selects a bucket, so that a
+ * message is stored in the same bucket with either encoding;
+ * {@link MessageKeyPartitionResolver} extracts it again.
+ * <p>
+ * Ids are reserved in blocks from a counter per binding, held in a
+ * replicated region shared by all members, and each thread hands out
+ * ids from its own block. Ids are therefore unique across producers,
+ * but not contiguous.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Patrick Peralta
+ */
+public class CompactKeyGenerator {
+
+	/**
+	 * Number of bits holding the bucket.
+	 */
+	public static final int BUCKET_BITS = 16;
+
+	/**
+	 * Maximum number of buckets in a region using compact keys.
+	 */
+	public static final int MAX_BUCKETS = 1 << BUCKET_BITS;
+
+	/**
+	 * Default number of ids reserved by a thread at a time.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	/**
+	 * Largest id that fits in a key.
+	 */
+	private static final long MAX_ID = (1L << (Long.SIZE - BUCKET_BITS)) - 1;
+
+	/**
+	 * Region holding the next id to reserve, by binding name.
+	 */
+	private final Region<String, Long> blockRegion;
+
+	/**
+	 * Binding name used as the key of the counter.
+	 */
+	private final String name;
+
+	/**
+	 * Number of ids reserved by a thread at a time.
+	 */
+	private final int blockSize;
+
+	/**
+	 * Block of ids reserved by the current thread. The first element
+	 * is the next id to hand out, the second is the (exclusive) end
+	 * of the block.
+	 */
+	private final ThreadLocal<long[]> block = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[2];
+		}
+	};
+
+
+	/**
+	 * Construct a {@code CompactKeyGenerator}.
+	 *
+	 * @param blockRegion replicated region holding the counter
+	 * @param name binding name
+	 * @param blockSize number of ids reserved by a thread at a time
+	 */
+	public CompactKeyGenerator(Region<String, Long> blockRegion, String name, int blockSize) {
+		Assert.notNull(blockRegion, "blockRegion must not be null");
+		Assert.hasText(name, "name must not be empty");
+		Assert.isTrue(blockSize > 0, "blockSize must be greater than zero");
+		this.blockRegion = blockRegion;
+		this.name = name;
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Return a new key for a message.
+	 *
+	 * @param routingHash routing hash of the message key
+	 * @param bucketCount number of buckets in the destination region
+	 * @return unique key holding the bucket of the message
+	 */
+	public long next(int routingHash, int bucketCount) {
+		Assert.isTrue(bucketCount <= MAX_BUCKETS, "Compact keys support at most " + MAX_BUCKETS + " buckets");
+		long[] block = this.block.get();
+		if (block[0] == block[1]) {
+			block[0] = reserve();
+			block[1] = block[0] + this.blockSize;
+		}
+		long id = block[0]++;
+		return (id << BUCKET_BITS) | Math.abs(routingHash % bucketCount);
+	}
+
+	/**
+	 * Reserve a block of ids from the shared counter.
+	 *
+	 * @return first id of the block
+	 */
+	private long reserve() {
+		while (true) {
+			Long start = this.blockRegion.putIfAbsent(this.name, (long) this.blockSize);
+			if (start == null) {
+				return 0;
+			}
+			long end = start + this.blockSize;
+			if (end > MAX_ID) {
+				throw new IllegalStateException("Compact key ids exhausted for binding " + this.name);
+			}
+			if (this.blockRegion.replace(this.name, start, end)) {
+				return start;
+			}
+		}
+	}
+
+	/**
+	 * Return the bucket held by a compact key.
+	 *
+	 * @param key compact key
+	 * @return bucket of the message stored under the key
+	 */
+	public static int getBucket(long key) {
+		return (int) (key & (MAX_BUCKETS - 1));
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.io.IOException;
+
+/**
+ * Strategy for compressing message payloads before they are stored
+ * in message regions. Compressed messages carry the {@link #getName() name}
+ * of the codec in the {@link GemfireMessageChannelBinder#COMPRESSION_HEADER}
+ * header; consumers must be configured with a codec of the same name.
+ *
+ * @author Patrick Peralta
+ * @see DeflaterCompressionCodec
+ */
+public interface CompressionCodec {
+
+	/**
+	 * Return the name of this codec.
+	 *
+	 * @return codec name
+	 */
+	String getName();
+
+	/**
+	 * Compress the given bytes.
+	 *
+	 * @param bytes bytes to compress
+	 * @return compressed bytes
+	 * @throws IOException if compression failed
+	 */
+	byte[] compress(byte[] bytes) throws IOException;
+
+	/**
+	 * Decompress bytes compressed by {@link #compress}.
+	 *
+	 * @param bytes compressed bytes
+	 * @return decompressed bytes
+	 * @throws IOException if decompression failed
+	 */
+	byte[] decompress(byte[] bytes) throws IOException;
+
+}
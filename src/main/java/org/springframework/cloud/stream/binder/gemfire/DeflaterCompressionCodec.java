@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link CompressionCodec} that uses the JDK {@link Deflater} and {@link Inflater}.
+ *
+ * @author Patrick Peralta
+ */
+public class DeflaterCompressionCodec implements CompressionCodec {
+
+	/**
+	 * Name of this codec.
+	 */
+	public static final String NAME = "deflate";
+
+	/**
+	 * Compression level; see {@link Deflater}.
+	 */
+	private final int level;
+
+
+	/**
+	 * Construct a {@code DeflaterCompressionCodec} using {@link Deflater#BEST_SPEED}.
+	 */
+	public DeflaterCompressionCodec() {
+		this(Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * Construct a {@code DeflaterCompressionCodec}.
+	 *
+	 * @param level compression level, from 0 to 9
+	 */
+	public DeflaterCompressionCodec(int level) {
+		this.level = level;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public byte[] compress(byte[] bytes) throws IOException {
+		Deflater deflater = new Deflater(this.level);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public byte[] decompress(byte[] bytes) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+			byte[] buffer = new byte[4096];
+			while (!inflater.finished()) {
+				int count = inflater.inflate(buffer);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Truncated compressed payload");
+				}
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		}
+		catch (DataFormatException e) {
+			throw new IOException("Invalid compressed payload", e);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+/**
+ * Strategy used by a consumer to receive messages written to
+ * the region for its consumer group.
+ *
+ * @author Patrick Peralta
+ */
+public enum DeliveryMode {
+
+	/**
+	 * Receive messages in batches from an async event queue via
+	 * {@link AsyncEventListeningMessageProducer}. Messages are
+	 * redelivered if a member fails before they are consumed.
+	 */
+	QUEUE,
+
+	/**
+	 * Receive each message from a cache listener on the member hosting
+	 * its primary bucket via {@link CacheListenerMessageProducer}.
+	 * Latency is lower, but messages handed off to the consumer are
+	 * lost if the member fails before they are published. If the hand-off
+	 * queue is full, writes to the region wait for space. Batch mode,
+	 * ordered delivery and duplicate detection are not supported; binding
+	 * a consumer with any of them enabled fails.
+	 */
+	LISTENER
+
+}
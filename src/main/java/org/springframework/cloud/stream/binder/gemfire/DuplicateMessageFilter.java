@@ -0,0 +1,280 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * Filter that detects duplicate and missing messages using the
+ * sequence ids assigned by each producer (see {@link MessageKey}).
+ * <p>
+ * For each producer, a sliding window over the most recent sequence ids
+ * is kept as a bitmap in a {@code long} array. A message whose sequence
+ * id is already marked in the window is a duplicate. When the window
+ * slides past a sequence id that was never received, it is counted as
+ * a gap. Messages older than the window cannot be checked; they are
+ * accepted and counted as late.
+ * <p>
+ * Since sequence ids are assigned across all buckets of a region, gaps
+ * are only meaningful if a single consumer instance hosts every bucket
+ * for its group. Duplicates are detected regardless. Gaps may also be
+ * reported if the producer reserves sequence ids in blocks of more
+ * than one.
+ * <p>
+ * Windows are kept for a bounded number of producers; the least
+ * recently seen producer is evicted first. This class is thread safe.
+ *
+ * @author Patrick Peralta
+ */
+public class DuplicateMessageFilter {
+
+	/**
+	 * Default number of sequence ids tracked per producer.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 1024;
+
+	/**
+	 * Default maximum number of producers tracked.
+	 */
+	public static final int DEFAULT_MAX_PRODUCERS = 1024;
+
+	/**
+	 * Number of sequence ids tracked per producer; a power of two.
+	 */
+	private final int windowSize;
+
+	/**
+	 * Windows by producer id, in access order.
+	 */
+	private final Map<Long, Window> windows;
+
+	private long acceptedCount;
+
+	private long duplicateCount;
+
+	private long gapCount;
+
+	private long lateCount;
+
+
+	/**
+	 * Construct a {@code DuplicateMessageFilter}.
+	 *
+	 * @param windowSize number of sequence ids tracked per producer;
+	 *                   rounded up to a power of two of at least 64
+	 * @param maxProducers maximum number of producers tracked
+	 */
+	public DuplicateMessageFilter(int windowSize, final int maxProducers) {
+		Assert.isTrue(windowSize > 0, "windowSize must be greater than zero");
+		Assert.isTrue(maxProducers > 0, "maxProducers must be greater than zero");
+		this.windowSize = Math.max(Long.SIZE, Integer.highestOneBit(windowSize - 1) << 1);
+		this.windows = new LinkedHashMap<Long, Window>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Window> eldest) {
+				return size() > maxProducers;
+			}
+		};
+	}
+
+	/**
+	 * Record a message and return whether it should be published. This is
+	 * equivalent to {@link #isDuplicate} followed by {@link #mark} if the
+	 * message is not a duplicate.
+	 *
+	 * @param producerId id of the producer of the message
+	 * @param sequenceId sequence id of the message
+	 * @return {@code false} if the message is a duplicate
+	 */
+	public synchronized boolean accept(long producerId, long sequenceId) {
+		if (isDuplicate(producerId, sequenceId)) {
+			return false;
+		}
+		mark(producerId, sequenceId);
+		return true;
+	}
+
+	/**
+	 * Return whether a message has already been {@link #mark marked} as
+	 * published. The message itself is not recorded, so that it is not
+	 * dropped when redelivered if publishing it fails.
+	 *
+	 * @param producerId id of the producer of the message
+	 * @param sequenceId sequence id of the message
+	 * @return {@code true} if the message is a duplicate
+	 */
+	public synchronized boolean isDuplicate(long producerId, long sequenceId) {
+		Window window = this.windows.get(producerId);
+		if (window == null || sequenceId > window.highest || sequenceId <= window.highest - this.windowSize) {
+			return false;
+		}
+		int index = (int) (sequenceId & (this.windowSize - 1));
+		if ((window.bits[index >>> 6] & (1L << index)) != 0) {
+			this.duplicateCount++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record that a message has been published.
+	 *
+	 * @param producerId id of the producer of the message
+	 * @param sequenceId sequence id of the message
+	 */
+	public synchronized void mark(long producerId, long sequenceId) {
+		Window window = window(producerId, sequenceId);
+		if (sequenceId > window.highest) {
+			advance(window, sequenceId);
+		}
+		else if (sequenceId <= window.highest - this.windowSize) {
+			this.lateCount++;
+			this.acceptedCount++;
+			return;
+		}
+
+		int index = (int) (sequenceId & (this.windowSize - 1));
+		window.bits[index >>> 6] |= 1L << index;
+		this.acceptedCount++;
+	}
+
+	private Window window(long producerId, long sequenceId) {
+		// every lookup goes through the map to keep its access order
+		// current, so that busy producers are not evicted
+		Window window = this.windows.get(producerId);
+		if (window == null) {
+			window = new Window(this.windowSize, sequenceId);
+			this.windows.put(producerId, window);
+		}
+		return window;
+	}
+
+	/**
+	 * Slide the window so that its highest sequence id is {@code sequenceId},
+	 * counting sequence ids that leave the window without being received.
+	 */
+	private void advance(Window window, long sequenceId) {
+		long leaveTo = sequenceId - this.windowSize;
+
+		// sequence ids leaving the window that were tracked in it
+		long from = Math.max(window.lowest, window.highest - this.windowSize + 1);
+		long to = Math.min(window.highest, leaveTo);
+		for (long p = from; p <= to; p++) {
+			int index = (int) (p & (this.windowSize - 1));
+			if ((window.bits[index >>> 6] & (1L << index)) == 0) {
+				this.gapCount++;
+			}
+		}
+
+		// sequence ids skipped over entirely
+		long skippedFrom = Math.max(window.lowest, window.highest + 1);
+		if (leaveTo >= skippedFrom) {
+			this.gapCount += leaveTo - skippedFrom + 1;
+		}
+
+		if (sequenceId - window.highest >= this.windowSize) {
+			Arrays.fill(window.bits, 0L);
+		}
+		else {
+			for (long p = window.highest + 1; p <= sequenceId; p++) {
+				int index = (int) (p & (this.windowSize - 1));
+				window.bits[index >>> 6] &= ~(1L << index);
+			}
+		}
+		window.highest = sequenceId;
+	}
+
+	/**
+	 * Return the number of messages accepted for publishing.
+	 *
+	 * @return number of accepted messages
+	 */
+	public synchronized long getAcceptedCount() {
+		return this.acceptedCount;
+	}
+
+	/**
+	 * Return the number of duplicate messages dropped.
+	 *
+	 * @return number of duplicates
+	 */
+	public synchronized long getDuplicateCount() {
+		return this.duplicateCount;
+	}
+
+	/**
+	 * Return the number of sequence ids that left the window
+	 * without being received.
+	 *
+	 * @return number of missing messages
+	 */
+	public synchronized long getGapCount() {
+		return this.gapCount;
+	}
+
+	/**
+	 * Return the number of messages that were older than the window
+	 * and could not be checked for duplicates.
+	 *
+	 * @return number of late messages
+	 */
+	public synchronized long getLateCount() {
+		return this.lateCount;
+	}
+
+	/**
+	 * Return the number of producers currently tracked.
+	 *
+	 * @return number of producers
+	 */
+	public synchronized int getProducerCount() {
+		return this.windows.size();
+	}
+
+
+	/**
+	 * Window of received sequence ids for a producer.
+	 */
+	private static class Window {
+
+		/**
+		 * Bitmap of received sequence ids, indexed by sequence id
+		 * modulo the window size.
+		 */
+		private final long[] bits;
+
+		/**
+		 * First sequence id received; lower ids are not counted as gaps.
+		 */
+		private final long lowest;
+
+		/**
+		 * Highest sequence id received.
+		 */
+		private long highest;
+
+		private Window(int windowSize, long firstSequenceId) {
+			this.bits = new long[windowSize / Long.SIZE];
+			this.lowest = firstSequenceId;
+			this.highest = firstSequenceId - 1;
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+/**
+ * Strategy used by {@link SendingHandler} for writing a message
+ * to the regions of multiple consumer groups.
+ *
+ * @author Patrick Peralta
+ */
+public enum FanOutMode {
+
+	/**
+	 * Write to each consumer group region in turn on the sending thread.
+	 */
+	SERIAL,
+
+	/**
+	 * Write to the consumer group regions concurrently and wait
+	 * for all writes to complete before returning.
+	 */
+	PARALLEL,
+
+	/**
+	 * Write to the consumer group regions concurrently without
+	 * waiting for the writes to complete. Failures are logged.
+	 */
+	ASYNC
+
+}
@@ -0,0 +1,555 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.Properties;
+
+import com.gemstone.gemfire.cache.wan.GatewaySender;
+
+import org.springframework.cloud.stream.binder.DefaultBindingPropertiesAccessor;
+import org.springframework.util.StringUtils;
+
+/**
+ * Accessor for GemFire specific binding properties. Each accessor
+ * takes the binder wide setting as the default value, which allows
+ * a binding to override it.
+ *
+ * @author Patrick Peralta
+ */
+public class GemfireBindingPropertiesAccessor extends DefaultBindingPropertiesAccessor {
+
+	/**
+	 * Producer property for the {@link FanOutMode} used to write
+	 * messages to multiple consumer groups.
+	 */
+	public static final String FAN_OUT_MODE = "fanOutMode";
+
+	/**
+	 * Producer property for the number of threads used to write
+	 * messages to multiple consumer groups concurrently.
+	 */
+	public static final String FAN_OUT_THREADS = "fanOutThreads";
+
+	/**
+	 * Producer property for the {@link TransportMode} used to pass
+	 * messages to consumer groups.
+	 */
+	public static final String TRANSPORT_MODE = "transportMode";
+
+	/**
+	 * Producer property that indicates if messages are published directly
+	 * to consumers bound in the same process when possible.
+	 */
+	public static final String LOCAL_DELIVERY = "localDelivery";
+
+	/**
+	 * Producer property that indicates if messages are sent straight to
+	 * consumers of the destination bound in the same process.
+	 */
+	public static final String FUSION = "fusion";
+
+	/**
+	 * Producer and consumer property that indicates if a message sent to
+	 * multiple consumer groups is stored once and shared by the groups.
+	 */
+	public static final String SHARED_PAYLOADS = "sharedPayloads";
+
+	/**
+	 * Producer property for the maximum number of batched messages for
+	 * the same bucket stored in a single region entry.
+	 */
+	public static final String ENVELOPE_SIZE = "envelopeSize";
+
+	/**
+	 * Producer and consumer property for the {@link KeyEncoding} of the
+	 * keys messages are stored under.
+	 */
+	public static final String KEY_ENCODING = "keyEncoding";
+
+	/**
+	 * Producer property for the number of messages without a partition
+	 * key that a sending thread routes to the same bucket.
+	 */
+	public static final String STICKY_MESSAGES = "stickyMessages";
+
+	/**
+	 * Producer property for the time in milliseconds that a sending thread
+	 * routes messages without a partition key to the same bucket.
+	 */
+	public static final String STICKY_PERIOD = "stickyPeriod";
+
+	/**
+	 * Producer property that indicates if the entries of a batch are
+	 * grouped by primary member and the groups written concurrently.
+	 */
+	public static final String MEMBER_GROUPING = "memberGrouping";
+
+	/**
+	 * Producer property for the number of threads used to write
+	 * groups of entries for different members concurrently.
+	 */
+	public static final String MEMBER_DISPATCH_THREADS = "memberDispatchThreads";
+
+	/**
+	 * Producer property for the number of message sequence ids
+	 * reserved by a sending thread at a time.
+	 */
+	public static final String SEQUENCE_BLOCK_SIZE = "sequenceBlockSize";
+
+	/**
+	 * Producer property for the minimum size in bytes of a payload
+	 * to be compressed.
+	 */
+	public static final String COMPRESSION_THRESHOLD = "compressionThreshold";
+
+	/**
+	 * Consumer property that indicates if messages are removed
+	 * from the message region once they have been published.
+	 */
+	public static final String REMOVE_CONSUMED_MESSAGES = "removeConsumedMessages";
+
+	/**
+	 * Consumer property for the number of threads used to publish
+	 * a batch of events.
+	 */
+	public static final String DISPATCH_THREADS = "dispatchThreads";
+
+	/**
+	 * Consumer property for the number of GemFire dispatcher threads
+	 * of the event queue. Takes precedence over {@code concurrency}.
+	 */
+	public static final String DISPATCHER_THREADS = "dispatcherThreads";
+
+	/**
+	 * Consumer property that indicates if each batch of events is
+	 * published as a single message.
+	 */
+	public static final String BATCH_MODE = "batchMode";
+
+	/**
+	 * Consumer property for a SpEL expression evaluated against each
+	 * {@link com.gemstone.gemfire.cache.asyncqueue.AsyncEvent} to produce
+	 * the message payload. If not set, the deserialized value of the
+	 * event is used without evaluating an expression.
+	 */
+	public static final String PAYLOAD_EXPRESSION = "payloadExpression";
+
+	/**
+	 * Consumer property that indicates if messages are published in
+	 * the order of the sequence ids assigned by their producer.
+	 */
+	public static final String ORDERED_DELIVERY = "orderedDelivery";
+
+	/**
+	 * Consumer property for the maximum number of messages buffered
+	 * per producer for ordered delivery.
+	 */
+	public static final String REORDER_BUFFER_CAPACITY = "reorderBufferCapacity";
+
+	/**
+	 * Consumer property for the time in milliseconds after which a gap
+	 * in a producer's sequence is skipped for ordered delivery.
+	 */
+	public static final String REORDER_GAP_TIMEOUT = "reorderGapTimeout";
+
+	/**
+	 * Consumer property that indicates if messages that were already
+	 * published are dropped.
+	 */
+	public static final String DUPLICATE_DETECTION = "duplicateDetection";
+
+	/**
+	 * Consumer property for the number of sequence ids tracked per
+	 * producer for duplicate detection.
+	 */
+	public static final String DUPLICATE_WINDOW_SIZE = "duplicateWindowSize";
+
+	/**
+	 * Consumer property for the {@link DeliveryMode} used to receive
+	 * messages from the message region.
+	 */
+	public static final String DELIVERY_MODE = "deliveryMode";
+
+	/**
+	 * Consumer property for the maximum number of messages waiting to
+	 * be published in {@link DeliveryMode#LISTENER} mode.
+	 */
+	public static final String HAND_OFF_CAPACITY = "handOffCapacity";
+
+	/**
+	 * Consumer property for the order policy of the event queue;
+	 * one of {@code KEY} or {@code PARTITION}.
+	 */
+	public static final String ORDER_POLICY = "orderPolicy";
+
+	/**
+	 * Consumer property for the maximum time in milliseconds that the
+	 * event queue waits before delivering a partial batch.
+	 */
+	public static final String BATCH_TIME_INTERVAL = "batchTimeInterval";
+
+	/**
+	 * Consumer property for the maximum amount of memory in megabytes
+	 * used by the event queue before events overflow to disk.
+	 */
+	public static final String MAXIMUM_QUEUE_MEMORY = "maximumQueueMemory";
+
+	/**
+	 * Consumer property for the name of the disk store used by the
+	 * event queue for overflow and persistence.
+	 */
+	public static final String DISK_STORE_NAME = "diskStoreName";
+
+
+	/**
+	 * Construct a {@code GemfireBindingPropertiesAccessor}.
+	 *
+	 * @param properties binding properties
+	 */
+	public GemfireBindingPropertiesAccessor(Properties properties) {
+		super(properties);
+	}
+
+	/**
+	 * Return the {@link FanOutMode} for a producer.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return fan out mode
+	 */
+	public FanOutMode getFanOutMode(FanOutMode defaultValue) {
+		String mode = getProperty(FAN_OUT_MODE);
+		return StringUtils.hasText(mode) ? FanOutMode.valueOf(mode.trim().toUpperCase()) : defaultValue;
+	}
+
+	/**
+	 * Return the number of threads used by a producer to write
+	 * messages to multiple consumer groups concurrently.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return number of fan out threads
+	 */
+	public int getFanOutThreads(int defaultValue) {
+		return getProperty(FAN_OUT_THREADS, defaultValue);
+	}
+
+	/**
+	 * Return the {@link TransportMode} used by a producer to pass
+	 * messages to consumer groups.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return transport mode
+	 */
+	public TransportMode getTransportMode(TransportMode defaultValue) {
+		String mode = getProperty(TRANSPORT_MODE);
+		return StringUtils.hasText(mode) ? TransportMode.valueOf(mode.trim().toUpperCase()) : defaultValue;
+	}
+
+	/**
+	 * Return whether a producer publishes messages directly to consumers
+	 * bound in the same process when possible.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return whether local delivery is enabled
+	 */
+	public boolean isLocalDelivery(boolean defaultValue) {
+		return getProperty(LOCAL_DELIVERY, defaultValue);
+	}
+
+	/**
+	 * Return whether a producer sends messages straight to consumers of
+	 * the destination bound in the same process.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return whether fusion is enabled
+	 */
+	public boolean isFusion(boolean defaultValue) {
+		return getProperty(FUSION, defaultValue);
+	}
+
+	/**
+	 * Return whether a message sent to multiple consumer groups is
+	 * stored once and shared by the groups.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return whether shared payloads are enabled
+	 */
+	public boolean isSharedPayloads(boolean defaultValue) {
+		return getProperty(SHARED_PAYLOADS, defaultValue);
+	}
+
+	/**
+	 * Return the maximum number of batched messages for the same
+	 * bucket stored in a single region entry.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return envelope size
+	 */
+	public int getEnvelopeSize(int defaultValue) {
+		return getProperty(ENVELOPE_SIZE, defaultValue);
+	}
+
+	/**
+	 * Return the {@link KeyEncoding} of the keys a producer stores
+	 * messages under; consumers use it to create their message region.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return key encoding
+	 */
+	public KeyEncoding getKeyEncoding(KeyEncoding defaultValue) {
+		String encoding = getProperty(KEY_ENCODING);
+		return StringUtils.hasText(encoding) ? KeyEncoding.valueOf(encoding.trim().toUpperCase()) : defaultValue;
+	}
+
+	/**
+	 * Return the number of messages without a partition key that a
+	 * sending thread routes to the same bucket.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return number of messages per bucket, or 0 for no limit
+	 */
+	public int getStickyMessages(int defaultValue) {
+		return getProperty(STICKY_MESSAGES, defaultValue);
+	}
+
+	/**
+	 * Return the time in milliseconds that a sending thread routes
+	 * messages without a partition key to the same bucket.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return sticky period, or 0 for no limit
+	 */
+	public long getStickyPeriod(long defaultValue) {
+		return getProperty(STICKY_PERIOD, defaultValue);
+	}
+
+	/**
+	 * Return whether a producer groups the entries of a batch by primary
+	 * member and writes the groups concurrently.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return whether member grouping is enabled
+	 */
+	public boolean isMemberGrouping(boolean defaultValue) {
+		return getProperty(MEMBER_GROUPING, defaultValue);
+	}
+
+	/**
+	 * Return the number of threads used by a producer to write groups
+	 * of entries for different members concurrently.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return number of member dispatch threads
+	 */
+	public int getMemberDispatchThreads(int defaultValue) {
+		return getProperty(MEMBER_DISPATCH_THREADS, defaultValue);
+	}
+
+	/**
+	 * Return the number of message sequence ids reserved by a
+	 * sending thread at a time.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return sequence block size
+	 */
+	public int getSequenceBlockSize(int defaultValue) {
+		return getProperty(SEQUENCE_BLOCK_SIZE, defaultValue);
+	}
+
+	/**
+	 * Return the minimum size in bytes of a payload to be compressed.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return compression threshold
+	 */
+	public int getCompressionThreshold(int defaultValue) {
+		return getProperty(COMPRESSION_THRESHOLD, defaultValue);
+	}
+
+	/**
+	 * Return whether a consumer removes messages from the message
+	 * region once they have been published.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return whether to remove consumed messages
+	 */
+	public boolean isRemoveConsumedMessages(boolean defaultValue) {
+		return getProperty(REMOVE_CONSUMED_MESSAGES, defaultValue);
+	}
+
+	/**
+	 * Return the number of threads used by a consumer to publish
+	 * a batch of events.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return number of dispatch threads
+	 */
+	public int getDispatchThreads(int defaultValue) {
+		return getProperty(DISPATCH_THREADS, defaultValue);
+	}
+
+	/**
+	 * Return whether a consumer publishes each batch of events as
+	 * a single message.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return whether batch mode is enabled
+	 */
+	public boolean isBatchMode(boolean defaultValue) {
+		return getProperty(BATCH_MODE, defaultValue);
+	}
+
+	/**
+	 * Return the payload expression for a consumer.
+	 *
+	 * @return payload expression; may be {@code null}
+	 */
+	public String getPayloadExpression() {
+		return getProperty(PAYLOAD_EXPRESSION);
+	}
+
+	/**
+	 * Return whether a consumer publishes messages in producer order.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return whether ordered delivery is enabled
+	 */
+	public boolean isOrderedDelivery(boolean defaultValue) {
+		return getProperty(ORDERED_DELIVERY, defaultValue);
+	}
+
+	/**
+	 * Return the maximum number of messages buffered per producer
+	 * for ordered delivery.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return reorder buffer capacity
+	 */
+	public int getReorderBufferCapacity(int defaultValue) {
+		return getProperty(REORDER_BUFFER_CAPACITY, defaultValue);
+	}
+
+	/**
+	 * Return the time in milliseconds after which a gap in a producer's
+	 * sequence is skipped for ordered delivery.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return reorder gap timeout
+	 */
+	public long getReorderGapTimeout(long defaultValue) {
+		return getProperty(REORDER_GAP_TIMEOUT, defaultValue);
+	}
+
+	/**
+	 * Return whether a consumer drops messages that were already published.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return whether duplicate detection is enabled
+	 */
+	public boolean isDuplicateDetection(boolean defaultValue) {
+		return getProperty(DUPLICATE_DETECTION, defaultValue);
+	}
+
+	/**
+	 * Return the number of sequence ids tracked per producer for
+	 * duplicate detection.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return duplicate detection window size
+	 */
+	public int getDuplicateWindowSize(int defaultValue) {
+		return getProperty(DUPLICATE_WINDOW_SIZE, defaultValue);
+	}
+
+	/**
+	 * Return the {@link DeliveryMode} used by a consumer to receive messages.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return delivery mode
+	 */
+	public DeliveryMode getDeliveryMode(DeliveryMode defaultValue) {
+		String mode = getProperty(DELIVERY_MODE);
+		return StringUtils.hasText(mode) ? DeliveryMode.valueOf(mode.trim().toUpperCase()) : defaultValue;
+	}
+
+	/**
+	 * Return the maximum number of messages waiting to be published
+	 * by a consumer in {@link DeliveryMode#LISTENER} mode.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return hand-off queue capacity
+	 */
+	public int getHandOffCapacity(int defaultValue) {
+		return getProperty(HAND_OFF_CAPACITY, defaultValue);
+	}
+
+	/**
+	 * Return the number of GemFire dispatcher threads for a consumer
+	 * event queue.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return number of dispatcher threads
+	 */
+	public int getDispatcherThreads(int defaultValue) {
+		return getProperty(DISPATCHER_THREADS, defaultValue);
+	}
+
+	/**
+	 * Return the order policy for a consumer event queue.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return order policy; may be {@code null}
+	 */
+	public GatewaySender.OrderPolicy getOrderPolicy(GatewaySender.OrderPolicy defaultValue) {
+		String policy = getProperty(ORDER_POLICY);
+		return StringUtils.hasText(policy)
+				? GatewaySender.OrderPolicy.valueOf(policy.trim().toUpperCase())
+				: defaultValue;
+	}
+
+	/**
+	 * Return the maximum time in milliseconds that a consumer event
+	 * queue waits before delivering a partial batch.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return batch time interval
+	 */
+	public int getBatchTimeInterval(int defaultValue) {
+		return getProperty(BATCH_TIME_INTERVAL, defaultValue);
+	}
+
+	/**
+	 * Return the maximum amount of memory in megabytes used by a
+	 * consumer event queue before events overflow to disk.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return maximum queue memory
+	 */
+	public int getMaximumQueueMemory(int defaultValue) {
+		return getProperty(MAXIMUM_QUEUE_MEMORY, defaultValue);
+	}
+
+	/**
+	 * Return the name of the disk store used by a consumer event queue.
+	 *
+	 * @param defaultValue value to return if the property is not set
+	 * @return disk store name; may be {@code null}
+	 */
+	public String getDiskStoreName(String defaultValue) {
+		return getProperty(DISK_STORE_NAME, defaultValue);
+	}
+
+}
@@ -16,8 +16,10 @@
 
 package org.springframework.cloud.stream.binder.gemfire;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 
@@ -31,13 +33,17 @@ import com.gemstone.gemfire.cache.Scope;
 import com.gemstone.gemfire.cache.asyncqueue.AsyncEventListener;
 import com.gemstone.gemfire.cache.asyncqueue.AsyncEventQueue;
 import com.gemstone.gemfire.cache.asyncqueue.AsyncEventQueueFactory;
+import com.gemstone.gemfire.cache.execute.FunctionService;
 import com.gemstone.gemfire.cache.partition.PartitionListener;
 import com.gemstone.gemfire.cache.partition.PartitionListenerAdapter;
+import com.gemstone.gemfire.cache.wan.GatewaySender;
 
 import org.springframework.cloud.stream.binder.AbstractBinder;
 import org.springframework.cloud.stream.binder.Binding;
 import org.springframework.cloud.stream.binder.DefaultBinding;
 import org.springframework.cloud.stream.binder.DefaultBindingPropertiesAccessor;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.integration.endpoint.AbstractEndpoint;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
@@ -64,9 +70,11 @@ import org.springframework.util.StringUtils;
 public class GemfireMessageChannelBinder extends AbstractBinder<MessageChannel> {
 
 	/**
-	 * SPeL parser.
+	 * SPeL parser; expressions are compiled once they have been interpreted
+	 * often enough to determine their types.
 	 */
-	private static final SpelExpressionParser parser = new SpelExpressionParser();
+	private static final SpelExpressionParser parser = new SpelExpressionParser(
+			new SpelParserConfiguration(SpelCompilerMode.MIXED, GemfireMessageChannelBinder.class.getClassLoader()));
 
 	/**
 	 * Postfix for message regions.
@@ -83,11 +91,36 @@ public class GemfireMessageChannelBinder extends AbstractBinder<MessageChannel>
 	 */
 	public static final String CONSUMER_GROUPS_REGION = "consumer_groups_region";
 
+	/**
+	 * Name of replicated region holding the counters from which
+	 * {@link CompactKeyGenerator compact key} ids are reserved.
+	 */
+	public static final String KEY_BLOCKS_REGION = "key_blocks_region";
+
 	/**
 	 * Name of default consumer group.
 	 */
 	public static final String DEFAULT_CONSUMER_GROUP = "default";
 
+	/**
+	 * Header set on messages with a compressed payload; the value
+	 * is the name of the {@link CompressionCodec} used.
+	 */
+	public static final String COMPRESSION_HEADER = "gemfireCompression";
+
+	/**
+	 * Header set on messages with a compressed payload if the
+	 * original payload was a {@code String}.
+	 */
+	public static final String COMPRESSED_STRING_HEADER = "gemfireCompressedString";
+
+	/**
+	 * Header of messages published by batch mode consumers; the value
+	 * is the list of headers of each message in the batch, in the same
+	 * order as the payload list.
+	 */
+	public static final String BATCH_HEADERS = "gemfireBatchHeaders";
+
 	/**
 	 * GemFire peer-to-peer cache.
 	 */
@@ -115,7 +148,244 @@ public class GemfireMessageChannelBinder extends AbstractBinder<MessageChannel>
 	private volatile boolean persistentQueue = false;
 
 	/**
-	 * Map of message regions used for consuming messages.
+	 * If {@code true}, producers buffer messages and write them to
+	 * message regions in batches. May be overridden per binding.
+	 */
+	private volatile boolean producerBatchingEnabled = false;
+
+	/**
+	 * Maximum number of messages buffered by a producer for a region
+	 * before the batch is written. May be overridden per binding.
+	 */
+	private volatile int producerBatchSize = 100;
+
+	/**
+	 * Maximum amount of time in milliseconds that a producer buffers
+	 * a message before the batch is written. May be overridden per binding.
+	 */
+	private volatile long producerBatchTimeout = 10;
+
+	/**
+	 * Maximum number of messages a producer keeps pending to be written,
+	 * for instance while writes to a region fail, before rejecting messages.
+	 */
+	private volatile int producerMaxPendingMessages = 10000;
+
+	/**
+	 * Strategy used by producers to write messages to multiple
+	 * consumer groups. May be overridden per binding.
+	 */
+	private volatile FanOutMode producerFanOutMode = FanOutMode.SERIAL;
+
+	/**
+	 * Number of threads used by producers to write messages to multiple
+	 * consumer groups concurrently. May be overridden per binding.
+	 */
+	private volatile int producerFanOutThreads = 4;
+
+	/**
+	 * Number of message sequence ids reserved by a sending thread at
+	 * a time. May be overridden per binding.
+	 */
+	private volatile int producerSequenceBlockSize = 1;
+
+	/**
+	 * If {@code true}, producers compress message payloads larger
+	 * than {@link #compressionThreshold}. May be overridden per binding.
+	 */
+	private volatile boolean producerCompress = false;
+
+	/**
+	 * Minimum size in bytes of a payload to be compressed.
+	 * May be overridden per binding.
+	 */
+	private volatile int compressionThreshold = 1024;
+
+	/**
+	 * Codec used to compress and decompress message payloads.
+	 */
+	private volatile CompressionCodec compressionCodec = new DeflaterCompressionCodec();
+
+	/**
+	 * How producers pass messages to consumer groups. May be overridden per binding.
+	 */
+	private volatile TransportMode producerTransportMode = TransportMode.REGION;
+
+	/**
+	 * If {@code true}, producers publish messages directly to a consumer bound
+	 * in this process if it hosts the primary bucket for the message and the
+	 * message region has no redundant copies. May be overridden per binding.
+	 */
+	private volatile boolean producerLocalDelivery = false;
+
+	/**
+	 * If {@code true}, producers send messages straight to consumers of the
+	 * same destination bound in this process. Should be enabled per binding.
+	 */
+	private volatile boolean producerFusion = false;
+
+	/**
+	 * If {@code true}, a message sent to multiple consumer groups is stored
+	 * once and shared by the groups. Producers and consumers of a destination
+	 * must agree on this setting. May be overridden per binding.
+	 */
+	private volatile boolean sharedPayloads = false;
+
+	/**
+	 * Maximum number of batched messages for the same bucket that a
+	 * producer stores in a single region entry. Only applies if producer
+	 * batching is enabled. May be overridden per binding.
+	 */
+	private volatile int producerEnvelopeSize = 1;
+
+	/**
+	 * Representation of the keys under which producers store messages.
+	 * Only applies to {@link TransportMode#REGION}. Consumers create their
+	 * message region for the same encoding. May be overridden per binding.
+	 */
+	private volatile KeyEncoding producerKeyEncoding = KeyEncoding.OBJECT;
+
+	/**
+	 * Number of messages without a partition key that a producer thread
+	 * routes to the same bucket before rotating; 0 for no limit. Sticky
+	 * routing is disabled if both this and {@link #producerStickyPeriod}
+	 * are 0. May be overridden per binding.
+	 */
+	private volatile int producerStickyMessages = 0;
+
+	/**
+	 * Time in milliseconds that a producer thread routes messages without a
+	 * partition key to the same bucket before rotating; 0 for no limit.
+	 * May be overridden per binding.
+	 */
+	private volatile long producerStickyPeriod = 0;
+
+	/**
+	 * If {@code true}, producers group the entries of a batch by the member
+	 * hosting their primary bucket and write the groups concurrently.
+	 * May be overridden per binding.
+	 */
+	private volatile boolean producerMemberGrouping = false;
+
+	/**
+	 * Number of threads used by a producer to write groups of entries for
+	 * different members concurrently. May be overridden per binding.
+	 */
+	private volatile int producerMemberDispatchThreads = 4;
+
+	/**
+	 * Shared payload stores by binding name.
+	 */
+	private final Map<String, SharedPayloadStore> sharedPayloadStores = new ConcurrentHashMap<>();
+
+	/**
+	 * Consumers bound by this binder, by message region name.
+	 */
+	private final LocalConsumerRegistry localConsumers = new LocalConsumerRegistry();
+
+	/**
+	 * Function that publishes messages sent with {@link TransportMode#FUNCTION}
+	 * to the consumers bound by this binder.
+	 */
+	private final MessageDeliveryFunction messageDeliveryFunction = new MessageDeliveryFunction(this.localConsumers);
+
+	/**
+	 * If {@code true}, consumers remove messages from the message region
+	 * once they have been published. May be overridden per binding.
+	 */
+	private volatile boolean removeConsumedMessages = true;
+
+	/**
+	 * Number of threads used by consumers to publish a batch of
+	 * events. May be overridden per binding.
+	 */
+	private volatile int consumerDispatchThreads = 1;
+
+	/**
+	 * If {@code true}, consumers publish each batch of events as a
+	 * single message. May be overridden per binding.
+	 */
+	private volatile boolean consumerBatchMode = false;
+
+	/**
+	 * If {@code true}, consumers publish messages in the order of the
+	 * sequence ids assigned by their producer. May be overridden per binding.
+	 */
+	private volatile boolean consumerOrderedDelivery = false;
+
+	/**
+	 * Maximum number of messages buffered per producer for ordered
+	 * delivery. May be overridden per binding.
+	 */
+	private volatile int reorderBufferCapacity = 1000;
+
+	/**
+	 * Time in milliseconds after which a gap in a producer's sequence is
+	 * skipped for ordered delivery. May be overridden per binding.
+	 */
+	private volatile long reorderGapTimeout = 1000;
+
+	/**
+	 * If {@code true}, consumers drop messages that were already published.
+	 * Disabled by default. May be overridden per binding.
+	 */
+	private volatile boolean consumerDuplicateDetection = false;
+
+	/**
+	 * How consumers receive messages from their message region.
+	 * May be overridden per binding.
+	 */
+	private volatile DeliveryMode consumerDeliveryMode = DeliveryMode.QUEUE;
+
+	/**
+	 * Maximum number of messages waiting to be published by a consumer
+	 * in {@link DeliveryMode#LISTENER} mode. May be overridden per binding.
+	 */
+	private volatile int consumerHandOffCapacity = 1024;
+
+	/**
+	 * Number of sequence ids tracked per producer for duplicate detection.
+	 * May be overridden per binding.
+	 */
+	private volatile int duplicateWindowSize = DuplicateMessageFilter.DEFAULT_WINDOW_SIZE;
+
+	/**
+	 * Number of GemFire dispatcher threads for consumer event queues.
+	 * If 0, the GemFire default is used. May be overridden per binding
+	 * with {@link GemfireBindingPropertiesAccessor#DISPATCHER_THREADS}
+	 * or the standard {@code concurrency} consumer property.
+	 */
+	private volatile int dispatcherThreads = 0;
+
+	/**
+	 * Order policy for consumer event queues with more than one dispatcher
+	 * thread. If {@code null}, the GemFire default is used. May be
+	 * overridden per binding.
+	 */
+	private volatile GatewaySender.OrderPolicy orderPolicy;
+
+	/**
+	 * Maximum time in milliseconds that a consumer event queue waits
+	 * before delivering a batch that has not reached {@link #batchSize}.
+	 * May be overridden per binding.
+	 */
+	private volatile int batchTimeInterval = 5;
+
+	/**
+	 * Maximum amount of memory in megabytes used by a consumer event queue
+	 * before events overflow to disk. May be overridden per binding.
+	 */
+	private volatile int maximumQueueMemory = 100;
+
+	/**
+	 * Name of the disk store used by consumer event queues for overflow
+	 * and persistence. If {@code null}, the default disk store is used.
+	 * May be overridden per binding.
+	 */
+	private volatile String diskStoreName;
+
+	/**
+	 * Map of message regions used for consuming messages, keyed by region name.
 	 */
 	private final Map<String, Region<MessageKey, Message<?>>> regionMap = new ConcurrentHashMap<>();
 
@@ -130,6 +400,12 @@ public class GemfireMessageChannelBinder extends AbstractBinder<MessageChannel>
 	 */
 	private volatile Region<String, ConsumerGroupTracker> consumerGroupsRegion;
 
+	/**
+	 * Replicated region for reserving compact key ids.
+	 * Key is the binding name, value is the next id to reserve.
+	 */
+	private volatile Region<String, Long> keyBlocksRegion;
+
 
 	/**
 	 * Construct a GemfireMessageChannelBinder.
@@ -172,10 +448,355 @@ public class GemfireMessageChannelBinder extends AbstractBinder<MessageChannel>
 		this.persistentQueue = persistentQueue;
 	}
 
+	public boolean isProducerBatchingEnabled() {
+		return producerBatchingEnabled;
+	}
+
+	public void setProducerBatchingEnabled(boolean producerBatchingEnabled) {
+		this.producerBatchingEnabled = producerBatchingEnabled;
+	}
+
+	public int getProducerBatchSize() {
+		return producerBatchSize;
+	}
+
+	public void setProducerBatchSize(int producerBatchSize) {
+		this.producerBatchSize = producerBatchSize;
+	}
+
+	public long getProducerBatchTimeout() {
+		return producerBatchTimeout;
+	}
+
+	public void setProducerBatchTimeout(long producerBatchTimeout) {
+		this.producerBatchTimeout = producerBatchTimeout;
+	}
+
+	public int getProducerMaxPendingMessages() {
+		return producerMaxPendingMessages;
+	}
+
+	public void setProducerMaxPendingMessages(int producerMaxPendingMessages) {
+		this.producerMaxPendingMessages = producerMaxPendingMessages;
+	}
+
+	public FanOutMode getProducerFanOutMode() {
+		return producerFanOutMode;
+	}
+
+	public void setProducerFanOutMode(FanOutMode producerFanOutMode) {
+		this.producerFanOutMode = producerFanOutMode;
+	}
+
+	public int getProducerFanOutThreads() {
+		return producerFanOutThreads;
+	}
+
+	public void setProducerFanOutThreads(int producerFanOutThreads) {
+		this.producerFanOutThreads = producerFanOutThreads;
+	}
+
+	public int getProducerSequenceBlockSize() {
+		return producerSequenceBlockSize;
+	}
+
+	public void setProducerSequenceBlockSize(int producerSequenceBlockSize) {
+		this.producerSequenceBlockSize = producerSequenceBlockSize;
+	}
+
+	public boolean isProducerCompress() {
+		return producerCompress;
+	}
+
+	public void setProducerCompress(boolean producerCompress) {
+		this.producerCompress = producerCompress;
+	}
+
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public CompressionCodec getCompressionCodec() {
+		return compressionCodec;
+	}
+
+	public void setCompressionCodec(CompressionCodec compressionCodec) {
+		Assert.notNull(compressionCodec);
+		this.compressionCodec = compressionCodec;
+	}
+
+	public boolean isProducerLocalDelivery() {
+		return producerLocalDelivery;
+	}
+
+	public void setProducerLocalDelivery(boolean producerLocalDelivery) {
+		this.producerLocalDelivery = producerLocalDelivery;
+	}
+
+	public boolean isSharedPayloads() {
+		return sharedPayloads;
+	}
+
+	public void setSharedPayloads(boolean sharedPayloads) {
+		this.sharedPayloads = sharedPayloads;
+	}
+
+	public int getProducerEnvelopeSize() {
+		return producerEnvelopeSize;
+	}
+
+	public void setProducerEnvelopeSize(int producerEnvelopeSize) {
+		this.producerEnvelopeSize = producerEnvelopeSize;
+	}
+
+	public KeyEncoding getProducerKeyEncoding() {
+		return producerKeyEncoding;
+	}
+
+	public void setProducerKeyEncoding(KeyEncoding producerKeyEncoding) {
+		Assert.notNull(producerKeyEncoding);
+		this.producerKeyEncoding = producerKeyEncoding;
+	}
+
+	public int getProducerStickyMessages() {
+		return producerStickyMessages;
+	}
+
+	public void setProducerStickyMessages(int producerStickyMessages) {
+		this.producerStickyMessages = producerStickyMessages;
+	}
+
+	public long getProducerStickyPeriod() {
+		return producerStickyPeriod;
+	}
+
+	public void setProducerStickyPeriod(long producerStickyPeriod) {
+		this.producerStickyPeriod = producerStickyPeriod;
+	}
+
+	public boolean isProducerMemberGrouping() {
+		return producerMemberGrouping;
+	}
+
+	public void setProducerMemberGrouping(boolean producerMemberGrouping) {
+		this.producerMemberGrouping = producerMemberGrouping;
+	}
+
+	public int getProducerMemberDispatchThreads() {
+		return producerMemberDispatchThreads;
+	}
+
+	public void setProducerMemberDispatchThreads(int producerMemberDispatchThreads) {
+		this.producerMemberDispatchThreads = producerMemberDispatchThreads;
+	}
+
+	public boolean isProducerFusion() {
+		return producerFusion;
+	}
+
+	public void setProducerFusion(boolean producerFusion) {
+		this.producerFusion = producerFusion;
+	}
+
+	/**
+	 * Return, for each producer binding, the consumer groups that
+	 * messages are sent to directly because of fusion.
+	 *
+	 * @return fused consumer groups by binding name
+	 */
+	public Map<String, Set<String>> getFusedBindings() {
+		Map<String, Set<String>> fused = new HashMap<>();
+		for (Map.Entry<String, SendingHandler> entry : this.sendingHandlerMap.entrySet()) {
+			Set<String> groups = entry.getValue().getFusedGroups();
+			if (!groups.isEmpty()) {
+				fused.put(entry.getKey(), groups);
+			}
+		}
+		return fused;
+	}
+
+	public TransportMode getProducerTransportMode() {
+		return producerTransportMode;
+	}
+
+	public void setProducerTransportMode(TransportMode producerTransportMode) {
+		Assert.notNull(producerTransportMode);
+		this.producerTransportMode = producerTransportMode;
+	}
+
+	public boolean isRemoveConsumedMessages() {
+		return removeConsumedMessages;
+	}
+
+	public void setRemoveConsumedMessages(boolean removeConsumedMessages) {
+		this.removeConsumedMessages = removeConsumedMessages;
+	}
+
+	public int getConsumerDispatchThreads() {
+		return consumerDispatchThreads;
+	}
+
+	public void setConsumerDispatchThreads(int consumerDispatchThreads) {
+		this.consumerDispatchThreads = consumerDispatchThreads;
+	}
+
+	public boolean isConsumerBatchMode() {
+		return consumerBatchMode;
+	}
+
+	public void setConsumerBatchMode(boolean consumerBatchMode) {
+		this.consumerBatchMode = consumerBatchMode;
+	}
+
+	public boolean isConsumerOrderedDelivery() {
+		return consumerOrderedDelivery;
+	}
+
+	public void setConsumerOrderedDelivery(boolean consumerOrderedDelivery) {
+		this.consumerOrderedDelivery = consumerOrderedDelivery;
+	}
+
+	public int getReorderBufferCapacity() {
+		return reorderBufferCapacity;
+	}
+
+	public void setReorderBufferCapacity(int reorderBufferCapacity) {
+		this.reorderBufferCapacity = reorderBufferCapacity;
+	}
+
+	public long getReorderGapTimeout() {
+		return reorderGapTimeout;
+	}
+
+	public void setReorderGapTimeout(long reorderGapTimeout) {
+		this.reorderGapTimeout = reorderGapTimeout;
+	}
+
+	public boolean isConsumerDuplicateDetection() {
+		return consumerDuplicateDetection;
+	}
+
+	public void setConsumerDuplicateDetection(boolean consumerDuplicateDetection) {
+		this.consumerDuplicateDetection = consumerDuplicateDetection;
+	}
+
+	public int getDuplicateWindowSize() {
+		return duplicateWindowSize;
+	}
+
+	public void setDuplicateWindowSize(int duplicateWindowSize) {
+		this.duplicateWindowSize = duplicateWindowSize;
+	}
+
+	public DeliveryMode getConsumerDeliveryMode() {
+		return consumerDeliveryMode;
+	}
+
+	public void setConsumerDeliveryMode(DeliveryMode consumerDeliveryMode) {
+		this.consumerDeliveryMode = consumerDeliveryMode;
+	}
+
+	public int getConsumerHandOffCapacity() {
+		return consumerHandOffCapacity;
+	}
+
+	public void setConsumerHandOffCapacity(int consumerHandOffCapacity) {
+		this.consumerHandOffCapacity = consumerHandOffCapacity;
+	}
+
+	/**
+	 * Return, for each consumer binding with ordered delivery, the number
+	 * of gaps its {@link ReorderBuffer} skipped because the buffer for a
+	 * producer was full, the gap timeout elapsed or the producer was evicted.
+	 *
+	 * @return skipped gaps by message region name; see {@link #createMessageRegionName}
+	 */
+	public Map<String, Long> getSkippedGapCounts() {
+		Map<String, Long> counts = new HashMap<>();
+		for (Map.Entry<String, LocalConsumer> entry : this.localConsumers.getConsumers().entrySet()) {
+			if (entry.getValue() instanceof AsyncEventListeningMessageProducer) {
+				ReorderBuffer reorderBuffer =
+						((AsyncEventListeningMessageProducer) entry.getValue()).getReorderBuffer();
+				if (reorderBuffer != null) {
+					counts.put(entry.getKey(), reorderBuffer.getSkippedGapCount());
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Return, for each consumer binding with duplicate detection, the
+	 * number of duplicate messages its {@link DuplicateMessageFilter} dropped.
+	 *
+	 * @return dropped duplicates by message region name; see {@link #createMessageRegionName}
+	 */
+	public Map<String, Long> getDuplicateCounts() {
+		Map<String, Long> counts = new HashMap<>();
+		for (Map.Entry<String, LocalConsumer> entry : this.localConsumers.getConsumers().entrySet()) {
+			if (entry.getValue() instanceof AsyncEventListeningMessageProducer) {
+				DuplicateMessageFilter duplicateMessageFilter =
+						((AsyncEventListeningMessageProducer) entry.getValue()).getDuplicateMessageFilter();
+				if (duplicateMessageFilter != null) {
+					counts.put(entry.getKey(), duplicateMessageFilter.getDuplicateCount());
+				}
+			}
+		}
+		return counts;
+	}
+
+	public int getDispatcherThreads() {
+		return dispatcherThreads;
+	}
+
+	public void setDispatcherThreads(int dispatcherThreads) {
+		this.dispatcherThreads = dispatcherThreads;
+	}
+
+	public GatewaySender.OrderPolicy getOrderPolicy() {
+		return orderPolicy;
+	}
+
+	public void setOrderPolicy(GatewaySender.OrderPolicy orderPolicy) {
+		this.orderPolicy = orderPolicy;
+	}
+
+	public int getBatchTimeInterval() {
+		return batchTimeInterval;
+	}
+
+	public void setBatchTimeInterval(int batchTimeInterval) {
+		this.batchTimeInterval = batchTimeInterval;
+	}
+
+	public int getMaximumQueueMemory() {
+		return maximumQueueMemory;
+	}
+
+	public void setMaximumQueueMemory(int maximumQueueMemory) {
+		this.maximumQueueMemory = maximumQueueMemory;
+	}
+
+	public String getDiskStoreName() {
+		return diskStoreName;
+	}
+
+	public void setDiskStoreName(String diskStoreName) {
+		this.diskStoreName = diskStoreName;
+	}
+
 	@Override
 	public void onInit() throws Exception {
+		GemfireSerializers.register();
+		FunctionService.registerFunction(this.messageDeliveryFunction);
 		RegionFactory<String, ConsumerGroupTracker> regionFactory = this.cache.createRegionFactory(RegionShortcut.REPLICATE);
 		this.consumerGroupsRegion = regionFactory.setScope(Scope.GLOBAL).create(CONSUMER_GROUPS_REGION);
+		this.keyBlocksRegion = this.cache.<String, Long>createRegionFactory(RegionShortcut.REPLICATE)
+				.create(KEY_BLOCKS_REGION);
 	}
 
 	/**
@@ -199,23 +820,100 @@ public class GemfireMessageChannelBinder extends AbstractBinder<MessageChannel>
 	 *
 	 * @param regionName prefix of the message region name
 	 * @param queueId queue id to associate with region
+	 * @param colocatedWith name of the region to colocate with, may be {@code null}
+	 * @param compactKeys whether the region holds compact keys
 	 *
 	 * @return region for consuming messages
 	 */
-	private Region<MessageKey, Message<?>> createConsumerMessageRegion(String regionName, String queueId)  {
+	private Region<MessageKey, Message<?>> createConsumerMessageRegion(String regionName, String queueId,
+			String colocatedWith, boolean compactKeys)  {
 		RegionFactory<MessageKey, Message<?>> regionFactory = this.cache.createRegionFactory(getConsumerRegionType());
-		return regionFactory.setPartitionAttributes(createPartitionAttributes())
+		return regionFactory.setPartitionAttributes(createPartitionAttributes(colocatedWith, compactKeys))
 				.addAsyncEventQueueId(queueId).create(regionName);
 	}
 
+	/**
+	 * Return the {@link SharedPayloadStore} for a binding, creating its
+	 * regions if they do not exist in this cache yet. The region holding
+	 * reference counts, like the message regions of the binding, is
+	 * colocated with the region holding messages; see
+	 * {@link #getSharedPayloadRegionName}.
+	 *
+	 * @param name binding name
+	 * @param regionType type of region to create
+	 * @return shared payload store for the binding
+	 */
+	private SharedPayloadStore getSharedPayloadStore(String name, RegionShortcut regionType) {
+		synchronized (this.sharedPayloadStores) {
+			SharedPayloadStore store = this.sharedPayloadStores.get(name);
+			if (store == null) {
+				store = new SharedPayloadStore(
+						this.<MessageKey, Message<?>>getOrCreateRegion(getSharedPayloadRegionName(name),
+								regionType, null),
+						this.<MessageKey, Integer>getOrCreateRegion(name + SharedPayloadStore.REFERENCES_POSTFIX,
+								regionType, getSharedPayloadRegionName(name)));
+				this.sharedPayloadStores.put(name, store);
+			}
+			return store;
+		}
+	}
+
+	/**
+	 * Return the name of the region that holds the shared messages of a
+	 * binding. If shared payloads are enabled for a binding, its message
+	 * regions are colocated with this region, so that a message and the
+	 * references to it are hosted by the same member.
+	 *
+	 * @param name binding name
+	 * @return name of the shared payload region
+	 */
+	private static String getSharedPayloadRegionName(String name) {
+		return name + SharedPayloadStore.PAYLOADS_POSTFIX;
+	}
+
+	private <K, V> Region<K, V> getOrCreateRegion(String regionName, RegionShortcut regionType,
+			String colocatedWith) {
+		Region<K, V> region = this.cache.getRegion(regionName);
+		if (region == null) {
+			RegionFactory<K, V> regionFactory = this.cache.createRegionFactory(regionType);
+			region = regionFactory.setPartitionAttributes(createPartitionAttributes(colocatedWith, false))
+					.create(regionName);
+		}
+		return region;
+	}
+
 	/**
 	 * Create {@link PartitionAttributes} for partitioned regions used for
-	 * storing messages.
+	 * storing messages under a {@link MessageKey}, which routes itself.
 	 *
 	 * @return partition attributes for message regions
 	 */
 	protected PartitionAttributes createPartitionAttributes() {
-		return new PartitionAttributesFactory().addPartitionListener(new PartitionListenerAdapter() {
+		return createPartitionAttributes(null, false);
+	}
+
+	/**
+	 * Create {@link PartitionAttributes} for partitioned regions used for
+	 * storing messages, optionally colocated with another region. Regions
+	 * holding compact keys ({@link KeyEncoding#LONG}) use a
+	 * {@link MessageKeyPartitionResolver}, so that a message stored under
+	 * a compact key is placed in the same bucket as under its
+	 * {@link MessageKey}.
+	 *
+	 * @param colocatedWith name of the region to colocate with, or
+	 * {@code null} if the region is not colocated
+	 * @param compactKeys whether the region holds compact keys
+	 * @return partition attributes for message regions
+	 */
+	protected PartitionAttributes createPartitionAttributes(String colocatedWith, boolean compactKeys) {
+		PartitionAttributesFactory factory = new PartitionAttributesFactory();
+		if (colocatedWith != null) {
+			factory.setColocatedWith(colocatedWith);
+		}
+		if (compactKeys) {
+			factory.setPartitionResolver(new MessageKeyPartitionResolver());
+		}
+		return factory.addPartitionListener(new PartitionListenerAdapter() {
 			@Override
 			public void afterBucketRemoved(int i, Iterable<?> iterable) {
 				logger.debug("Bucket {} removed", i);
@@ -234,13 +932,39 @@ public class GemfireMessageChannelBinder extends AbstractBinder<MessageChannel>
 	 *
 	 * @param name prefix of the event queue name
 	 * @param eventListener message listener invoked when an event is added to the queue
+	 * @param properties consumer binding properties
 	 * @return queue for processing region events
 	 */
-	protected AsyncEventQueue createAsyncEventQueue(String name, AsyncEventListener eventListener) {
+	protected AsyncEventQueue createAsyncEventQueue(String name, AsyncEventListener eventListener,
+			GemfireBindingPropertiesAccessor properties) {
 		AsyncEventQueueFactory queueFactory = this.cache.createAsyncEventQueueFactory();
 		queueFactory.setPersistent(this.persistentQueue);
 		queueFactory.setParallel(true);
-		queueFactory.setBatchSize(this.batchSize);
+		queueFactory.setBatchSize(properties.getBatchSize(this.batchSize));
+		queueFactory.setBatchTimeInterval(properties.getBatchTimeInterval(this.batchTimeInterval));
+		queueFactory.setMaximumQueueMemory(properties.getMaximumQueueMemory(this.maximumQueueMemory));
+		String diskStoreName = properties.getDiskStoreName(this.diskStoreName);
+		if (StringUtils.hasText(diskStoreName)) {
+			if (this.cache.findDiskStore(diskStoreName) == null) {
+				this.cache.createDiskStoreFactory().create(diskStoreName);
+			}
+			queueFactory.setDiskStoreName(diskStoreName);
+		}
+
+		int dispatcherThreads = properties.getDispatcherThreads(
+				properties.getConcurrency(this.dispatcherThreads));
+		if (dispatcherThreads > 0) {
+			queueFactory.setDispatcherThreads(dispatcherThreads);
+		}
+		GatewaySender.OrderPolicy orderPolicy = properties.getOrderPolicy(this.orderPolicy);
+		if (orderPolicy != null) {
+			// parallel queues are dispatched per bucket; THREAD ordering
+			// is only supported by serial queues
+			Assert.isTrue(orderPolicy != GatewaySender.OrderPolicy.THREAD,
+					"Order policy THREAD is not supported for parallel event queues");
+			queueFactory.setOrderPolicy(orderPolicy);
+		}
+
 		String queueId = name + QUEUE_POSTFIX;
 		return queueFactory.create(queueId, eventListener);
 	}
@@ -307,32 +1031,170 @@ public class GemfireMessageChannelBinder extends AbstractBinder<MessageChannel>
 			group = DEFAULT_CONSUMER_GROUP;
 		}
 		String messageRegionName = createMessageRegionName(name, group);
+		GemfireBindingPropertiesAccessor bindingProperties = new GemfireBindingPropertiesAccessor(properties);
+		if (bindingProperties.getDeliveryMode(this.consumerDeliveryMode) == DeliveryMode.LISTENER) {
+			return bindListenerConsumer(name, group, messageRegionName, inputChannel, bindingProperties);
+		}
 
 		AsyncEventListeningMessageProducer messageProducer = new AsyncEventListeningMessageProducer();
 		messageProducer.setOutputChannel(inputChannel);
-		messageProducer.setExpressionPayload(parser.parseExpression("deserializedValue"));
+		String payloadExpression = bindingProperties.getPayloadExpression();
+		if (StringUtils.hasText(payloadExpression)) {
+			messageProducer.setExpressionPayload(parser.parseExpression(payloadExpression));
+		}
+		messageProducer.setCompressionCodec(this.compressionCodec);
+		messageProducer.setRemoveConsumedMessages(
+				bindingProperties.isRemoveConsumedMessages(this.removeConsumedMessages));
+		messageProducer.setDispatchThreads(bindingProperties.getDispatchThreads(this.consumerDispatchThreads));
+		messageProducer.setBatchMode(bindingProperties.isBatchMode(this.consumerBatchMode));
+		messageProducer.setOrderedDelivery(bindingProperties.isOrderedDelivery(this.consumerOrderedDelivery));
+		messageProducer.setReorderBufferCapacity(
+				bindingProperties.getReorderBufferCapacity(this.reorderBufferCapacity));
+		messageProducer.setReorderGapTimeout(bindingProperties.getReorderGapTimeout(this.reorderGapTimeout));
+		messageProducer.setDuplicateDetection(
+				bindingProperties.isDuplicateDetection(this.consumerDuplicateDetection));
+		messageProducer.setDuplicateWindowSize(bindingProperties.getDuplicateWindowSize(this.duplicateWindowSize));
+		boolean compactKeys = bindingProperties.getKeyEncoding(this.producerKeyEncoding) == KeyEncoding.LONG;
+		if (compactKeys) {
+			// messages stored under a compact key carry no sequence id
+			Assert.isTrue(!bindingProperties.isOrderedDelivery(this.consumerOrderedDelivery),
+					"Ordered delivery is not supported with key encoding LONG");
+			Assert.isTrue(!bindingProperties.isDuplicateDetection(this.consumerDuplicateDetection),
+					"Duplicate detection is not supported with key encoding LONG");
+		}
+		String colocatedWith = null;
+		if (bindingProperties.isSharedPayloads(this.sharedPayloads)) {
+			checkSharedPayloadRemoval(bindingProperties);
+			messageProducer.setSharedPayloadStore(getSharedPayloadStore(name, getConsumerRegionType()));
+			colocatedWith = getSharedPayloadRegionName(name);
+		}
 		messageProducer.setBeanFactory(this.getBeanFactory());
 		messageProducer.afterPropertiesSet();
 
-		AsyncEventQueue queue = createAsyncEventQueue(messageRegionName, messageProducer);
-		Region<MessageKey, Message<?>> messageRegion = createConsumerMessageRegion(messageRegionName, queue.getId());
+		AsyncEventQueue queue = createAsyncEventQueue(messageRegionName, messageProducer, bindingProperties);
+		Region<MessageKey, Message<?>> messageRegion = createConsumerMessageRegion(messageRegionName, queue.getId(),
+				colocatedWith, compactKeys);
 
-		this.regionMap.put(name, messageRegion);
+		this.regionMap.put(messageRegionName, messageRegion);
+		this.localConsumers.register(messageRegionName, messageProducer);
 		addConsumerGroup(name, group);
 		messageProducer.start();
 
-		return bindingForConsumer(name, group, inputChannel, messageProducer,
-				new DefaultBindingPropertiesAccessor(properties));
+		return bindingForConsumer(name, group, inputChannel, messageProducer, bindingProperties);
+	}
+
+	/**
+	 * Check that a consumer with shared payloads removes consumed messages;
+	 * references to shared messages are released as they are removed, so
+	 * otherwise shared messages would never be removed.
+	 *
+	 * @param bindingProperties consumer binding properties
+	 */
+	private void checkSharedPayloadRemoval(GemfireBindingPropertiesAccessor bindingProperties) {
+		Assert.isTrue(bindingProperties.isRemoveConsumedMessages(this.removeConsumedMessages),
+				"Shared payloads require removeConsumedMessages to be enabled");
+	}
+
+	/**
+	 * Bind a consumer that receives messages from a cache listener
+	 * on the message region (see {@link DeliveryMode#LISTENER}).
+	 *
+	 * @param name binding name
+	 * @param group consumer group name
+	 * @param messageRegionName name of the message region
+	 * @param inputChannel channel messages are published to
+	 * @param bindingProperties consumer binding properties
+	 * @return consumer binding
+	 */
+	private Binding<MessageChannel> bindListenerConsumer(String name, String group, String messageRegionName,
+			MessageChannel inputChannel, GemfireBindingPropertiesAccessor bindingProperties) {
+		// the listener publishes each message as it is written, so there are
+		// no batches to publish together, reorder or check for redeliveries
+		Assert.isTrue(!bindingProperties.isBatchMode(this.consumerBatchMode),
+				"Batch mode is not supported with delivery mode LISTENER");
+		Assert.isTrue(!bindingProperties.isOrderedDelivery(this.consumerOrderedDelivery),
+				"Ordered delivery is not supported with delivery mode LISTENER");
+		Assert.isTrue(!bindingProperties.isDuplicateDetection(this.consumerDuplicateDetection),
+				"Duplicate detection is not supported with delivery mode LISTENER");
+		CacheListenerMessageProducer messageProducer = new CacheListenerMessageProducer();
+		messageProducer.setOutputChannel(inputChannel);
+		String payloadExpression = bindingProperties.getPayloadExpression();
+		if (StringUtils.hasText(payloadExpression)) {
+			messageProducer.setExpressionPayload(parser.parseExpression(payloadExpression));
+		}
+		messageProducer.setCompressionCodec(this.compressionCodec);
+		messageProducer.setRemoveConsumedMessages(
+				bindingProperties.isRemoveConsumedMessages(this.removeConsumedMessages));
+		messageProducer.setHandOffCapacity(bindingProperties.getHandOffCapacity(this.consumerHandOffCapacity));
+		String colocatedWith = null;
+		if (bindingProperties.isSharedPayloads(this.sharedPayloads)) {
+			checkSharedPayloadRemoval(bindingProperties);
+			messageProducer.setSharedPayloadStore(getSharedPayloadStore(name, getConsumerRegionType()));
+			colocatedWith = getSharedPayloadRegionName(name);
+		}
+		messageProducer.setBeanFactory(this.getBeanFactory());
+		messageProducer.afterPropertiesSet();
+		messageProducer.start();
+
+		RegionFactory<MessageKey, Message<?>> regionFactory = this.cache.createRegionFactory(getConsumerRegionType());
+		Region<MessageKey, Message<?>> messageRegion = regionFactory
+				.setPartitionAttributes(createPartitionAttributes(colocatedWith,
+						bindingProperties.getKeyEncoding(this.producerKeyEncoding) == KeyEncoding.LONG))
+				.addCacheListener(messageProducer.<MessageKey, Message<?>>getCacheListener())
+				.create(messageRegionName);
+
+		this.regionMap.put(messageRegionName, messageRegion);
+		this.localConsumers.register(messageRegionName, messageProducer);
+		addConsumerGroup(name, group);
+
+		return bindingForConsumer(name, group, inputChannel, messageProducer, bindingProperties);
 	}
 
 	@Override
 	public Binding<MessageChannel> bindProducer(String name, MessageChannel outboundBindTarget, Properties properties) {
 		Assert.isInstanceOf(SubscribableChannel.class, outboundBindTarget);
 
-		DefaultBindingPropertiesAccessor bindingProperties = new DefaultBindingPropertiesAccessor(properties);
+		GemfireBindingPropertiesAccessor bindingProperties = new GemfireBindingPropertiesAccessor(properties);
+		boolean sharedPayloads = bindingProperties.isSharedPayloads(this.sharedPayloads);
+		boolean compactKeys = bindingProperties.getKeyEncoding(this.producerKeyEncoding) == KeyEncoding.LONG;
+		// message regions must be partitioned the same way in every member
+		PartitionAttributes partitionAttributes = createPartitionAttributes(
+				sharedPayloads ? getSharedPayloadRegionName(name) : null, compactKeys);
 		SendingHandler handler = new SendingHandler(this.cache, this.consumerGroupsRegion,
-				name, this.producerRegionType, createPartitionAttributes(), getBeanFactory(),
+				name, this.producerRegionType, partitionAttributes, getBeanFactory(),
 				this.evaluationContext, this.partitionSelector, bindingProperties);
+		handler.setBatchingEnabled(bindingProperties.isBatchingEnabled(this.producerBatchingEnabled));
+		handler.setBatchSize(bindingProperties.getBatchSize(this.producerBatchSize));
+		handler.setBatchTimeout(bindingProperties.getBatchTimeout(this.producerBatchTimeout));
+		handler.setMaxPendingMessages(this.producerMaxPendingMessages);
+		handler.setFanOutMode(bindingProperties.getFanOutMode(this.producerFanOutMode));
+		handler.setFanOutThreads(bindingProperties.getFanOutThreads(this.producerFanOutThreads));
+		handler.setTransportMode(bindingProperties.getTransportMode(this.producerTransportMode));
+		handler.setMemberGrouping(bindingProperties.isMemberGrouping(this.producerMemberGrouping));
+		handler.setMemberDispatchThreads(
+				bindingProperties.getMemberDispatchThreads(this.producerMemberDispatchThreads));
+		// a persistent queue survives a restart, in memory delivery does not
+		handler.setLocalDelivery(bindingProperties.isLocalDelivery(this.producerLocalDelivery)
+				&& !this.persistentQueue);
+		handler.setLocalConsumers(this.localConsumers);
+		handler.setFusion(bindingProperties.isFusion(this.producerFusion));
+		if (sharedPayloads) {
+			handler.setSharedPayloadStore(getSharedPayloadStore(name, this.producerRegionType));
+		}
+		handler.setSequenceBlockSize(bindingProperties.getSequenceBlockSize(this.producerSequenceBlockSize));
+		handler.setEnvelopeSize(bindingProperties.getEnvelopeSize(this.producerEnvelopeSize));
+		int stickyMessages = bindingProperties.getStickyMessages(this.producerStickyMessages);
+		long stickyPeriod = bindingProperties.getStickyPeriod(this.producerStickyPeriod);
+		if (stickyMessages > 0 || stickyPeriod > 0) {
+			handler.setStickyRouter(new StickyRouter(stickyMessages, stickyPeriod));
+		}
+		if (compactKeys) {
+			handler.setCompactKeyGenerator(new CompactKeyGenerator(this.keyBlocksRegion, name,
+					CompactKeyGenerator.DEFAULT_BLOCK_SIZE));
+		}
+		handler.setCompress(bindingProperties.isCompress(this.producerCompress));
+		handler.setCompressionThreshold(bindingProperties.getCompressionThreshold(this.compressionThreshold));
+		handler.setCompressionCodec(this.compressionCodec);
 		handler.start();
 
 		SubscribableChannel subscribableChannel = (SubscribableChannel) outboundBindTarget;
@@ -368,8 +1230,9 @@ public class GemfireMessageChannelBinder extends AbstractBinder<MessageChannel>
 
 			@Override
 			protected void afterUnbind() {
-				Region<MessageKey, Message<?>> region = regionMap.remove(
-						createMessageRegionName(getName(), getGroup()));
+				String messageRegionName = createMessageRegionName(getName(), getGroup());
+				localConsumers.unregister(messageRegionName);
+				Region<MessageKey, Message<?>> region = regionMap.remove(messageRegionName);
 				if (region != null) {
 					region.close();
 				}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import com.gemstone.gemfire.DataSerializable;
+import com.gemstone.gemfire.DataSerializer;
+import com.gemstone.gemfire.Instantiator;
+
+/**
+ * Registers the GemFire serialization ids for classes stored by the binder.
+ * Registration must happen in every member that reads or writes binder
+ * regions before any messages are sent; {@link GemfireMessageChannelBinder}
+ * performs registration when it is initialized.
+ *
+ * @author Patrick Peralta
+ */
+public final class GemfireSerializers {
+
+	/**
+	 * GemFire class id for {@link MessageKey}.
+	 */
+	public static final int MESSAGE_KEY_ID = 0x53435301;
+
+	/**
+	 * GemFire serializer id for {@link MessageDataSerializer}.
+	 */
+	public static final int MESSAGE_SERIALIZER_ID = 0x53435302;
+
+	/**
+	 * GemFire class id for {@link MessageReference}.
+	 */
+	public static final int MESSAGE_REFERENCE_ID = 0x53435303;
+
+	/**
+	 * GemFire class id for {@link MessageEnvelope}.
+	 */
+	public static final int MESSAGE_ENVELOPE_ID = 0x53435304;
+
+
+	private GemfireSerializers() {
+	}
+
+	/**
+	 * Register the binder's GemFire serialization ids. This method
+	 * may be invoked more than once.
+	 */
+	public static void register() {
+		Instantiator.register(new Instantiator(MessageKey.class, MESSAGE_KEY_ID) {
+			@Override
+			public DataSerializable newInstance() {
+				return new MessageKey();
+			}
+		});
+		Instantiator.register(new Instantiator(MessageReference.class, MESSAGE_REFERENCE_ID) {
+			@Override
+			public DataSerializable newInstance() {
+				return MessageReference.INSTANCE;
+			}
+		});
+		Instantiator.register(new Instantiator(MessageEnvelope.class, MESSAGE_ENVELOPE_ID) {
+			@Override
+			public DataSerializable newInstance() {
+				return new MessageEnvelope();
+			}
+		});
+		DataSerializer.register(MessageDataSerializer.class);
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+/**
+ * Representation of the keys under which a producer stores messages
+ * in the region for each consumer group.
+ *
+ * @author Patrick Peralta
+ */
+public enum KeyEncoding {
+
+	/**
+	 * Store each message under its {@link MessageKey}.
+	 */
+	OBJECT,
+
+	/**
+	 * Store each message under a {@code Long} generated by a
+	 * {@link CompactKeyGenerator}, which GemFire keeps in the region
+	 * entry without a separate key object. The {@link MessageKey} is
+	 * not stored, except for messages packed in a {@link MessageEnvelope},
+	 * so binding a consumer with ordered delivery or duplicate detection
+	 * enabled fails. A message in a batch that is written again is stored
+	 * under the same key. Consumers must use the same encoding.
+	 */
+	LONG
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.Map;
+
+import com.gemstone.gemfire.cache.Region;
+
+import org.springframework.messaging.Message;
+
+/**
+ * Consumer bound in this process that accepts messages handed to it
+ * directly instead of through its message region. Implemented by the
+ * inbound endpoints so that such messages go through the same processing
+ * as messages read from the region (ordering, duplicate detection,
+ * batch mode, payload expression and decompression).
+ *
+ * @author Patrick Peralta
+ * @see LocalConsumerRegistry
+ */
+public interface LocalConsumer {
+
+	/**
+	 * Publish messages destined for the message region of this consumer.
+	 * The messages are not written to, or removed from, the region.
+	 *
+	 * @param region message region of the consumer
+	 * @param messages messages by key, in the order they were sent
+	 */
+	void deliver(Region<?, ?> region, Map<?, Message<?>> messages);
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the consumers bound in this process, keyed by the
+ * name of their message region. Used to publish messages to a
+ * consumer without going through its region; see
+ * {@link MessageDeliveryFunction} and {@link SendingHandler#setLocalDelivery}.
+ *
+ * @author Patrick Peralta
+ */
+public class LocalConsumerRegistry {
+
+	private final ConcurrentMap<String, LocalConsumer> consumers = new ConcurrentHashMap<>();
+
+	/**
+	 * Register the consumer of a message region.
+	 *
+	 * @param regionName name of the message region
+	 * @param consumer consumer messages are delivered to
+	 */
+	public void register(String regionName, LocalConsumer consumer) {
+		this.consumers.put(regionName, consumer);
+	}
+
+	/**
+	 * Remove the consumer of a message region.
+	 *
+	 * @param regionName name of the message region
+	 */
+	public void unregister(String regionName) {
+		this.consumers.remove(regionName);
+	}
+
+	/**
+	 * Return the consumer of a message region.
+	 *
+	 * @param regionName name of the message region
+	 * @return consumer, or {@code null} if no consumer is bound in this process
+	 */
+	public LocalConsumer getConsumer(String regionName) {
+		return this.consumers.get(regionName);
+	}
+
+	/**
+	 * Return the consumers bound in this process.
+	 *
+	 * @return unmodifiable view of the consumers by message region name
+	 */
+	public Map<String, LocalConsumer> getConsumers() {
+		return Collections.unmodifiableMap(this.consumers);
+	}
+
+}
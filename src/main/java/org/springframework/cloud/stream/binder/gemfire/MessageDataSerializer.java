@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.gemstone.gemfire.DataSerializer;
+
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * GemFire {@link DataSerializer} for {@link GenericMessage}s stored in
+ * message regions. Compared to Java serialization of the message and its
+ * {@link MessageHeaders}, this serializer:
+ * <ul>
+ *     <li>writes no class descriptors</li>
+ *     <li>writes the {@link MessageHeaders#ID id} and
+ *         {@link MessageHeaders#TIMESTAMP timestamp} headers as
+ *         primitive values</li>
+ *     <li>writes common header names as a single byte index into a
+ *         fixed dictionary</li>
+ *     <li>writes {@code String}, {@code Integer}, {@code Long},
+ *         {@code Boolean}, {@code UUID} and {@code byte[]} header values
+ *         with a one byte type tag followed by the value</li>
+ *     <li>writes {@code byte[]} and {@code String} payloads as is</li>
+ * </ul>
+ * Other header values and payloads are written with
+ * {@link DataSerializer#writeObject}. Subclasses of {@code GenericMessage}
+ * are not handled by this serializer.
+ * <p>
+ * The dictionary of header names is part of the serialized format;
+ * names may only be appended to it.
+ *
+ * @author Patrick Peralta
+ */
+public class MessageDataSerializer extends DataSerializer {
+
+	/**
+	 * Header names that are written as an index into this array.
+	 */
+	private static final String[] HEADER_DICTIONARY = {
+			MessageHeaders.CONTENT_TYPE,
+			MessageHeaders.REPLY_CHANNEL,
+			MessageHeaders.ERROR_CHANNEL,
+			IntegrationMessageHeaderAccessor.CORRELATION_ID,
+			IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER,
+			IntegrationMessageHeaderAccessor.SEQUENCE_SIZE,
+			IntegrationMessageHeaderAccessor.SEQUENCE_DETAILS,
+			IntegrationMessageHeaderAccessor.EXPIRATION_DATE,
+			IntegrationMessageHeaderAccessor.PRIORITY,
+			"originalContentType",
+			GemfireMessageChannelBinder.COMPRESSION_HEADER,
+			GemfireMessageChannelBinder.COMPRESSED_STRING_HEADER,
+			GemfireMessageChannelBinder.BATCH_HEADERS,
+	};
+
+	private static final Map<String, Integer> HEADER_INDEX = new HashMap<>();
+
+	static {
+		for (int i = 0; i < HEADER_DICTIONARY.length; i++) {
+			HEADER_INDEX.put(HEADER_DICTIONARY[i], i);
+		}
+	}
+
+	/**
+	 * Header name index indicating that the name is written as a string.
+	 */
+	private static final int LITERAL_NAME = 0xFF;
+
+	private static final byte NULL = 0;
+
+	private static final byte STRING = 1;
+
+	private static final byte INTEGER = 2;
+
+	private static final byte LONG = 3;
+
+	private static final byte BOOLEAN = 4;
+
+	private static final byte UUID_VALUE = 5;
+
+	private static final byte BYTES = 6;
+
+	private static final byte OBJECT = 7;
+
+
+	@Override
+	public Class<?>[] getSupportedClasses() {
+		return new Class<?>[] {GenericMessage.class};
+	}
+
+	@Override
+	public int getId() {
+		return GemfireSerializers.MESSAGE_SERIALIZER_ID;
+	}
+
+	@Override
+	public boolean toData(Object o, DataOutput out) throws IOException {
+		// subclasses such as ErrorMessage are restored as GenericMessage
+		// by fromData, so they are left to Java serialization
+		if (o == null || o.getClass() != GenericMessage.class) {
+			return false;
+		}
+
+		Message<?> message = (Message<?>) o;
+		MessageHeaders headers = message.getHeaders();
+		UUID id = headers.getId();
+		Long timestamp = headers.getTimestamp();
+
+		out.writeLong(id == null ? 0 : id.getMostSignificantBits());
+		out.writeLong(id == null ? 0 : id.getLeastSignificantBits());
+		out.writeLong(timestamp == null ? 0 : timestamp);
+
+		int count = headers.size();
+		if (headers.containsKey(MessageHeaders.ID)) {
+			count--;
+		}
+		if (headers.containsKey(MessageHeaders.TIMESTAMP)) {
+			count--;
+		}
+		writeLength(count, out);
+		for (Map.Entry<String, Object> header : headers.entrySet()) {
+			String name = header.getKey();
+			if (MessageHeaders.ID.equals(name) || MessageHeaders.TIMESTAMP.equals(name)) {
+				continue;
+			}
+			Integer index = HEADER_INDEX.get(name);
+			if (index == null) {
+				out.writeByte(LITERAL_NAME);
+				DataSerializer.writeString(name, out);
+			}
+			else {
+				out.writeByte(index);
+			}
+			writeValue(header.getValue(), out);
+		}
+
+		writeValue(message.getPayload(), out);
+		return true;
+	}
+
+	@Override
+	public Object fromData(DataInput in) throws IOException, ClassNotFoundException {
+		long mostSignificantBits = in.readLong();
+		long leastSignificantBits = in.readLong();
+		long timestamp = in.readLong();
+
+		int count = readLength(in);
+		Map<String, Object> headers = new HashMap<>(count * 2);
+		for (int i = 0; i < count; i++) {
+			int index = in.readUnsignedByte();
+			String name = (index == LITERAL_NAME ? DataSerializer.readString(in) : HEADER_DICTIONARY[index]);
+			headers.put(name, readValue(in));
+		}
+
+		Object payload = readValue(in);
+		return new GenericMessage<>(payload, new DeserializedMessageHeaders(headers,
+				new UUID(mostSignificantBits, leastSignificantBits), timestamp));
+	}
+
+	/**
+	 * Write a header value or payload preceded by a type tag.
+	 *
+	 * @param value value to write
+	 * @param out output to write to
+	 * @throws IOException
+	 */
+	private void writeValue(Object value, DataOutput out) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+		else if (value instanceof String) {
+			out.writeByte(STRING);
+			DataSerializer.writeString((String) value, out);
+		}
+		else if (value instanceof byte[]) {
+			out.writeByte(BYTES);
+			DataSerializer.writeByteArray((byte[]) value, out);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof UUID) {
+			out.writeByte(UUID_VALUE);
+			out.writeLong(((UUID) value).getMostSignificantBits());
+			out.writeLong(((UUID) value).getLeastSignificantBits());
+		}
+		else {
+			out.writeByte(OBJECT);
+			DataSerializer.writeObject(value, out);
+		}
+	}
+
+	/**
+	 * Read a value written by {@link #writeValue}.
+	 *
+	 * @param in input to read from
+	 * @return value
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private Object readValue(DataInput in) throws IOException, ClassNotFoundException {
+		byte type = in.readByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case STRING:
+				return DataSerializer.readString(in);
+			case BYTES:
+				return DataSerializer.readByteArray(in);
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case BOOLEAN:
+				return in.readBoolean();
+			case UUID_VALUE:
+				return new UUID(in.readLong(), in.readLong());
+			case OBJECT:
+				return DataSerializer.readObject(in);
+			default:
+				throw new IOException("Unknown value type " + type);
+		}
+	}
+
+	/**
+	 * Write a non negative length as a variable length integer; lengths
+	 * under 128 take a single byte.
+	 *
+	 * @param length length to write
+	 * @param out output to write to
+	 * @throws IOException
+	 */
+	private void writeLength(int length, DataOutput out) throws IOException {
+		while ((length & ~0x7F) != 0) {
+			out.writeByte((length & 0x7F) | 0x80);
+			length >>>= 7;
+		}
+		out.writeByte(length);
+	}
+
+	/**
+	 * Read a length written by {@link #writeLength}.
+	 *
+	 * @param in input to read from
+	 * @return length
+	 * @throws IOException
+	 */
+	private int readLength(DataInput in) throws IOException {
+		int length = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			length |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		return length;
+	}
+
+
+	/**
+	 * {@link MessageHeaders} that retain the id and timestamp
+	 * of the serialized message.
+	 */
+	private static class DeserializedMessageHeaders extends MessageHeaders {
+
+		private static final long serialVersionUID = 1L;
+
+		private DeserializedMessageHeaders(Map<String, Object> headers, UUID id, Long timestamp) {
+			super(headers, id, timestamp);
+		}
+	}
+
+}
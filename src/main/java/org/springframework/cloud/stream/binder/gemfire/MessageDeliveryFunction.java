@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.gemstone.gemfire.cache.execute.Function;
+import com.gemstone.gemfire.cache.execute.FunctionContext;
+import com.gemstone.gemfire.cache.execute.FunctionException;
+import com.gemstone.gemfire.cache.execute.RegionFunctionContext;
+
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * GemFire {@link Function} that publishes messages to the local consumer
+ * for a consumer group region, used by {@link TransportMode#FUNCTION}.
+ * <p>
+ * The function is executed on a message region with the keys of the
+ * messages as the filter; GemFire runs it on the members hosting
+ * the primary buckets for those keys. The arguments are a map of
+ * message keys to messages; {@link SendingHandler} executes the function
+ * once per member with only the messages for that member. Each member
+ * {@link LocalConsumer#deliver delivers} the messages for the keys in its
+ * part of the filter to the consumer registered for the region in the
+ * {@link LocalConsumerRegistry}, so they go through the same processing
+ * as messages read from the region. The function returns {@code true}
+ * once the messages have been published.
+ * <p>
+ * The function is not highly available: if a member fails during the
+ * execution, the execution fails and the sender writes the messages
+ * to the region instead (see {@link TransportMode#FUNCTION}).
+ *
+ * @author Patrick Peralta
+ */
+public class MessageDeliveryFunction implements Function {
+
+	/**
+	 * Id the function is registered with.
+	 */
+	public static final String ID = "gemfireBinderMessageDelivery";
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Local consumers by message region name.
+	 */
+	private final transient LocalConsumerRegistry consumers;
+
+
+	/**
+	 * Construct a {@code MessageDeliveryFunction}.
+	 *
+	 * @param consumers registry of the consumers in this process
+	 */
+	public MessageDeliveryFunction(LocalConsumerRegistry consumers) {
+		Assert.notNull(consumers, "consumers must not be null");
+		this.consumers = consumers;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void execute(FunctionContext functionContext) {
+		RegionFunctionContext context = (RegionFunctionContext) functionContext;
+		String regionName = context.getDataSet().getName();
+		LocalConsumer consumer = this.consumers.getConsumer(regionName);
+		if (consumer == null) {
+			throw new FunctionException("No consumer for region " + regionName);
+		}
+
+		Map<Object, Message<?>> messages = (Map<Object, Message<?>>) context.getArguments();
+		Set<?> filter = context.getFilter();
+		Map<Object, Message<?>> local = new LinkedHashMap<>();
+		for (Map.Entry<Object, Message<?>> entry : messages.entrySet()) {
+			if (filter.contains(entry.getKey())) {
+				local.put(entry.getKey(), entry.getValue());
+			}
+		}
+		consumer.deliver(context.getDataSet(), local);
+		context.getResultSender().lastResult(Boolean.TRUE);
+	}
+
+	@Override
+	public String getId() {
+		return ID;
+	}
+
+	@Override
+	public boolean hasResult() {
+		return true;
+	}
+
+	@Override
+	public boolean optimizeForWrite() {
+		// run on the members hosting the primary buckets, like a put
+		return true;
+	}
+
+	@Override
+	public boolean isHA() {
+		// re-execution after a member failure could publish messages twice;
+		// the sender writes the messages to the region instead
+		return false;
+	}
+
+}
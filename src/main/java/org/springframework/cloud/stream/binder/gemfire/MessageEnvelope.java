@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.gemstone.gemfire.DataSerializable;
+import com.gemstone.gemfire.DataSerializer;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Payload of a single region entry that holds several messages destined
+ * for the same bucket, written by {@link SendingHandler} to amortize the
+ * per-entry cost of small messages. The key of each message is kept so
+ * that its sequence id can be recovered; the entry is stored under the
+ * key of the first message. With {@link KeyEncoding#LONG}, the entry is
+ * stored under a compact key; a {@link MessageReference} is then always
+ * wrapped in an envelope, possibly of a single message, so that the
+ * consumer has its key.
+ *
+ * @author Patrick Peralta
+ */
+public final class MessageEnvelope implements DataSerializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private List<MessageKey> keys;
+
+	private List<Message<?>> messages;
+
+
+	/**
+	 * Constructor for serialization.
+	 */
+	public MessageEnvelope() {
+	}
+
+	/**
+	 * Construct a {@code MessageEnvelope}.
+	 *
+	 * @param keys message keys, in order
+	 * @param messages messages, in the same order as their keys
+	 */
+	public MessageEnvelope(List<MessageKey> keys, List<Message<?>> messages) {
+		Assert.notEmpty(keys, "keys must not be empty");
+		Assert.isTrue(keys.size() == messages.size(), "keys and messages must have the same size");
+		this.keys = keys;
+		this.messages = messages;
+	}
+
+	/**
+	 * Return a message with an envelope holding the given messages as its payload.
+	 *
+	 * @param keys message keys, in order
+	 * @param messages messages, in the same order as their keys
+	 * @return envelope message
+	 */
+	public static Message<MessageEnvelope> wrap(List<MessageKey> keys, List<Message<?>> messages) {
+		return new GenericMessage<>(new MessageEnvelope(keys, messages));
+	}
+
+	/**
+	 * Return the envelope held by a value read from a message region.
+	 *
+	 * @param value region value
+	 * @return envelope, or {@code null} if the value is not an envelope message
+	 */
+	public static MessageEnvelope unwrap(Object value) {
+		if (value instanceof Message && ((Message<?>) value).getPayload() instanceof MessageEnvelope) {
+			return (MessageEnvelope) ((Message<?>) value).getPayload();
+		}
+		return null;
+	}
+
+	/**
+	 * Return the keys of the messages in this envelope.
+	 *
+	 * @return message keys
+	 */
+	public List<MessageKey> getKeys() {
+		return Collections.unmodifiableList(this.keys);
+	}
+
+	/**
+	 * Return the messages in this envelope.
+	 *
+	 * @return messages
+	 */
+	public List<Message<?>> getMessages() {
+		return Collections.unmodifiableList(this.messages);
+	}
+
+	/**
+	 * Return the number of messages in this envelope.
+	 *
+	 * @return number of messages
+	 */
+	public int size() {
+		return this.keys.size();
+	}
+
+	@Override
+	public void toData(DataOutput out) throws IOException {
+		int size = this.keys.size();
+		out.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			this.keys.get(i).toData(out);
+			DataSerializer.writeObject(this.messages.get(i), out);
+		}
+	}
+
+	@Override
+	public void fromData(DataInput in) throws IOException, ClassNotFoundException {
+		int size = in.readInt();
+		this.keys = new ArrayList<>(size);
+		this.messages = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			MessageKey key = new MessageKey();
+			key.fromData(in);
+			this.keys.add(key);
+			this.messages.add(DataSerializer.<Message<?>>readObject(in));
+		}
+	}
+
+}
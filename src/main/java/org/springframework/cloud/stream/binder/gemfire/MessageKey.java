@@ -16,11 +16,11 @@
 
 package org.springframework.cloud.stream.binder.gemfire;
 
-import java.io.Externalizable;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
 
+import com.gemstone.gemfire.DataSerializable;
 import com.gemstone.gemfire.cache.EntryOperation;
 import com.gemstone.gemfire.cache.PartitionResolver;
 
@@ -37,10 +37,14 @@ import org.springframework.messaging.Message;
  *     <li>An integer used as the hash code for GemFire to select a
  *         bucket for storing the message in a partitioned region.</li>
  * </ul>
+ * Instances are serialized with GemFire's {@link DataSerializable}
+ * mechanism; the class is registered with a GemFire class id by
+ * {@link GemfireSerializers#register()} so that only the id and the
+ * 20 bytes of field data are written.
  *
  * @author Patrick Peralta
  */
-public final class MessageKey implements Externalizable, Comparable<MessageKey>,
+public final class MessageKey implements DataSerializable, Comparable<MessageKey>,
 		PartitionResolver<MessageKey, Message<?>> {
 
 	/**
@@ -149,6 +153,15 @@ public final class MessageKey implements Externalizable, Comparable<MessageKey>,
 		return (int) longPid;
 	}
 
+	/**
+	 * Return the hash used for selecting the partitioned region bucket.
+	 *
+	 * @return routing hash
+	 */
+	public int getRoutingHash() {
+		return routingHash;
+	}
+
 	/**
 	 * Return the timestamp of when the producer of this message key started.
 	 *
@@ -210,14 +223,14 @@ public final class MessageKey implements Externalizable, Comparable<MessageKey>,
 	}
 
 	@Override
-	public void writeExternal(ObjectOutput out) throws IOException {
+	public void toData(DataOutput out) throws IOException {
 		out.writeLong(sequenceId);
 		out.writeLong(producerId);
 		out.writeInt(routingHash);
 	}
 
 	@Override
-	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+	public void fromData(DataInput in) throws IOException, ClassNotFoundException {
 		sequenceId = in.readLong();
 		producerId = in.readLong();
 		routingHash = in.readInt();
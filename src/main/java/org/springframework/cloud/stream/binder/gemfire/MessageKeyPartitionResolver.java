@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import com.gemstone.gemfire.cache.EntryOperation;
+import com.gemstone.gemfire.cache.PartitionResolver;
+
+/**
+ * {@link PartitionResolver} for regions storing messages. The routing
+ * object is the {@link MessageKey#getRoutingHash() routing hash} of a
+ * {@link MessageKey}, or the bucket held by a {@code Long} key generated
+ * by {@link CompactKeyGenerator}. Either places a message in the same
+ * bucket. Other keys are their own routing object.
+ * <p>
+ * A resolver set on a region takes precedence over a key implementing
+ * {@link PartitionResolver}, so it must handle both kinds of keys. It is
+ * only set on regions that hold compact keys ({@link KeyEncoding#LONG}).
+ *
+ * @author Patrick Peralta
+ */
+public class MessageKeyPartitionResolver implements PartitionResolver<Object, Object> {
+
+	@Override
+	public Object getRoutingObject(EntryOperation<Object, Object> entryOperation) {
+		Object key = entryOperation.getKey();
+		if (key instanceof MessageKey) {
+			return ((MessageKey) key).getRoutingHash();
+		}
+		if (key instanceof Long) {
+			return CompactKeyGenerator.getBucket((Long) key);
+		}
+		return key;
+	}
+
+	@Override
+	public String getName() {
+		return this.getClass().getName();
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+
+import com.gemstone.gemfire.DataSerializable;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * Payload of the message stored in a consumer group region in place of
+ * a message that is held once in a {@link SharedPayloadStore}. The message
+ * is found in the store under the same {@link MessageKey}, so this class
+ * has no state; it serializes to its class id only.
+ *
+ * @author Patrick Peralta
+ */
+public final class MessageReference implements DataSerializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Shared instance.
+	 */
+	public static final MessageReference INSTANCE = new MessageReference();
+
+	/**
+	 * Message written to consumer group regions in place of a shared message.
+	 */
+	public static final Message<MessageReference> MESSAGE = new GenericMessage<>(INSTANCE);
+
+
+	private MessageReference() {
+	}
+
+	@Override
+	public void toData(DataOutput out) {
+	}
+
+	@Override
+	public void fromData(DataInput in) {
+	}
+
+	private Object readResolve() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Return whether a value read from a consumer group region refers to
+	 * a message in a {@link SharedPayloadStore}.
+	 *
+	 * @param value region value
+	 * @return {@code true} if the value is a reference message
+	 */
+	public static boolean isReference(Object value) {
+		return value instanceof Message && ((Message<?>) value).getPayload() instanceof MessageReference;
+	}
+
+	@Override
+	public String toString() {
+		return "MessageReference";
+	}
+
+}
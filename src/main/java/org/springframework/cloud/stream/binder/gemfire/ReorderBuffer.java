@@ -0,0 +1,351 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.util.Assert;
+
+/**
+ * Buffer that releases messages to a {@link MessageHandler} in the
+ * order of the sequence ids assigned by each producer (see {@link MessageKey}).
+ * <p>
+ * Messages are tracked per producer. A message with the next expected
+ * sequence id is released immediately, along with any buffered messages
+ * that follow it. Other messages are buffered until the gap before them
+ * is filled. A gap is skipped if the buffer for a producer exceeds its
+ * capacity, or if the lowest buffered message has waited longer than the
+ * gap timeout. Messages that arrive after their gap has been skipped are
+ * released immediately and counted as late.
+ * <p>
+ * The first message received from a producer sets the expected sequence.
+ * Since sequence ids are assigned across all buckets of a region, a
+ * consumer only sees a contiguous sequence if it hosts every bucket;
+ * with more than one consumer instance in a group, each gap waits for
+ * the gap timeout.
+ * <p>
+ * State is kept for a bounded number of producers; the least recently
+ * seen producer is evicted first, releasing its buffered messages.
+ * <p>
+ * This class is thread safe. Messages from a producer are released
+ * while holding a lock for that producer.
+ *
+ * @author Patrick Peralta
+ */
+public class ReorderBuffer {
+
+	/**
+	 * Default maximum number of producers tracked.
+	 */
+	public static final int DEFAULT_MAX_PRODUCERS = 1024;
+
+	/**
+	 * Handler that buffered messages are released to.
+	 */
+	private final MessageHandler handler;
+
+	/**
+	 * Maximum number of messages buffered per producer.
+	 */
+	private final int capacity;
+
+	/**
+	 * Time in nanoseconds after which a gap is skipped.
+	 */
+	private final long gapTimeoutNanos;
+
+	/**
+	 * Maximum number of producers tracked.
+	 */
+	private final int maxProducers;
+
+	/**
+	 * Reordering state per producer id in access order. Guarded by itself;
+	 * the lock for a producer is only acquired after releasing this lock.
+	 */
+	private final LinkedHashMap<Long, ProducerState> producers = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Number of messages currently buffered.
+	 */
+	private final AtomicLong bufferedCount = new AtomicLong();
+
+	/**
+	 * Number of messages that were buffered and have been released.
+	 */
+	private final AtomicLong delayedCount = new AtomicLong();
+
+	/**
+	 * Total time in nanoseconds that released messages were buffered.
+	 */
+	private final AtomicLong delayNanos = new AtomicLong();
+
+	/**
+	 * Number of gaps skipped because of capacity or timeout.
+	 */
+	private final AtomicLong skippedGapCount = new AtomicLong();
+
+	/**
+	 * Number of messages that arrived after their gap was skipped.
+	 */
+	private final AtomicLong lateCount = new AtomicLong();
+
+
+	/**
+	 * Construct a {@code ReorderBuffer}.
+	 *
+	 * @param handler handler to release messages to
+	 * @param capacity maximum number of messages buffered per producer
+	 * @param gapTimeout time in milliseconds after which a gap is skipped
+	 * @param maxProducers maximum number of producers tracked
+	 */
+	public ReorderBuffer(MessageHandler handler, int capacity, long gapTimeout, int maxProducers) {
+		Assert.notNull(handler, "handler must not be null");
+		Assert.isTrue(capacity > 0, "capacity must be greater than zero");
+		Assert.isTrue(gapTimeout > 0, "gapTimeout must be greater than zero");
+		Assert.isTrue(maxProducers > 0, "maxProducers must be greater than zero");
+		this.handler = handler;
+		this.capacity = capacity;
+		this.gapTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(gapTimeout);
+		this.maxProducers = maxProducers;
+	}
+
+	/**
+	 * Add a message, releasing it and any messages that follow it
+	 * if it is the next expected message from its producer.
+	 *
+	 * @param producerId id of the producer of the message
+	 * @param sequenceId sequence id of the message
+	 * @param message message
+	 */
+	public void add(long producerId, long sequenceId, Message<?> message) {
+		ProducerState state;
+		ProducerState evicted = null;
+		synchronized (this.producers) {
+			state = this.producers.get(producerId);
+			if (state == null) {
+				state = new ProducerState(sequenceId);
+				this.producers.put(producerId, state);
+				if (this.producers.size() > this.maxProducers) {
+					Iterator<ProducerState> iterator = this.producers.values().iterator();
+					evicted = iterator.next();
+					iterator.remove();
+				}
+			}
+		}
+
+		long now = System.nanoTime();
+		if (evicted != null) {
+			synchronized (evicted) {
+				evicted.evicted = true;
+				release(evicted, now);
+			}
+		}
+		synchronized (state) {
+			if (state.evicted) {
+				// evicted after lookup; nothing is left to order against
+				this.handler.handleMessage(message);
+			}
+			else if (sequenceId == state.nextSequence) {
+				this.handler.handleMessage(message);
+				state.nextSequence++;
+				releaseContiguous(state, now);
+			}
+			else if (sequenceId < state.nextSequence) {
+				this.lateCount.incrementAndGet();
+				this.handler.handleMessage(message);
+			}
+			else {
+				state.pending.put(sequenceId, new Pending(message, now));
+				this.bufferedCount.incrementAndGet();
+				if (state.pending.size() > this.capacity) {
+					skipGap(state, now);
+				}
+			}
+			expire(state, now);
+		}
+	}
+
+	/**
+	 * Skip gaps for which the lowest buffered message has waited
+	 * longer than the gap timeout.
+	 */
+	public void expire() {
+		long now = System.nanoTime();
+		for (ProducerState state : getProducerStates()) {
+			synchronized (state) {
+				expire(state, now);
+			}
+		}
+	}
+
+	/**
+	 * Release all buffered messages, skipping any gaps.
+	 */
+	public void releaseAll() {
+		long now = System.nanoTime();
+		for (ProducerState state : getProducerStates()) {
+			synchronized (state) {
+				release(state, now);
+			}
+		}
+	}
+
+	private List<ProducerState> getProducerStates() {
+		synchronized (this.producers) {
+			return new ArrayList<>(this.producers.values());
+		}
+	}
+
+	private void release(ProducerState state, long now) {
+		while (!state.pending.isEmpty()) {
+			skipGap(state, now);
+		}
+	}
+
+	private void expire(ProducerState state, long now) {
+		while (!state.pending.isEmpty()
+				&& now - state.pending.firstEntry().getValue().arrival >= this.gapTimeoutNanos) {
+			skipGap(state, now);
+		}
+	}
+
+	private void skipGap(ProducerState state, long now) {
+		this.skippedGapCount.incrementAndGet();
+		state.nextSequence = state.pending.firstKey();
+		releaseContiguous(state, now);
+	}
+
+	private void releaseContiguous(ProducerState state, long now) {
+		while (!state.pending.isEmpty() && state.pending.firstKey() == state.nextSequence) {
+			Map.Entry<Long, Pending> entry = state.pending.pollFirstEntry();
+			this.bufferedCount.decrementAndGet();
+			this.delayedCount.incrementAndGet();
+			this.delayNanos.addAndGet(now - entry.getValue().arrival);
+			state.nextSequence++;
+			this.handler.handleMessage(entry.getValue().message);
+		}
+	}
+
+	/**
+	 * Return the number of messages currently buffered.
+	 *
+	 * @return number of buffered messages
+	 */
+	public long getBufferedCount() {
+		return this.bufferedCount.get();
+	}
+
+	/**
+	 * Return the number of messages that were buffered and have been released.
+	 *
+	 * @return number of delayed messages
+	 */
+	public long getDelayedCount() {
+		return this.delayedCount.get();
+	}
+
+	/**
+	 * Return the total time in milliseconds that released messages were buffered.
+	 *
+	 * @return total reordering delay
+	 */
+	public long getTotalDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(this.delayNanos.get());
+	}
+
+	/**
+	 * Return the number of gaps skipped because the buffer for a producer
+	 * was full or the gap timeout elapsed.
+	 *
+	 * @return number of skipped gaps
+	 */
+	public long getSkippedGapCount() {
+		return this.skippedGapCount.get();
+	}
+
+	/**
+	 * Return the number of messages that arrived after their gap was skipped.
+	 *
+	 * @return number of late messages
+	 */
+	public long getLateCount() {
+		return this.lateCount.get();
+	}
+
+	/**
+	 * Return the number of producers currently tracked.
+	 *
+	 * @return number of producers
+	 */
+	public int getProducerCount() {
+		synchronized (this.producers) {
+			return this.producers.size();
+		}
+	}
+
+
+	/**
+	 * Reordering state for a producer.
+	 */
+	private static class ProducerState {
+
+		/**
+		 * Sequence id of the next message to release.
+		 */
+		private long nextSequence;
+
+		/**
+		 * Buffered messages by sequence id.
+		 */
+		private final TreeMap<Long, Pending> pending = new TreeMap<>();
+
+		/**
+		 * Whether this producer has been evicted from the buffer.
+		 */
+		private boolean evicted;
+
+		private ProducerState(long nextSequence) {
+			this.nextSequence = nextSequence;
+		}
+	}
+
+	/**
+	 * Buffered message and the time it was buffered.
+	 */
+	private static class Pending {
+
+		private final Message<?> message;
+
+		private final long arrival;
+
+		private Pending(Message<?> message, long arrival) {
+			this.message = message;
+			this.arrival = arrival;
+		}
+	}
+
+}
@@ -18,20 +18,43 @@ package org.springframework.cloud.stream.binder.gemfire;
 
 import static org.springframework.cloud.stream.binder.gemfire.GemfireMessageChannelBinder.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.gemstone.gemfire.cache.Cache;
+import com.gemstone.gemfire.cache.EntryEvent;
 import com.gemstone.gemfire.cache.PartitionAttributes;
 import com.gemstone.gemfire.cache.Region;
 import com.gemstone.gemfire.cache.RegionFactory;
 import com.gemstone.gemfire.cache.RegionShortcut;
+import com.gemstone.gemfire.cache.execute.FunctionException;
+import com.gemstone.gemfire.cache.execute.FunctionService;
 import com.gemstone.gemfire.cache.partition.PartitionRegionHelper;
+import com.gemstone.gemfire.cache.util.CacheListenerAdapter;
+import com.gemstone.gemfire.distributed.DistributedMember;
 
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.cloud.stream.binder.DefaultBindingPropertiesAccessor;
@@ -40,16 +63,103 @@ import org.springframework.cloud.stream.binder.PartitionSelectorStrategy;
 import org.springframework.context.Lifecycle;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
 
 /**
  * {@link MessageHandler} implementation that publishes messages
  * to GemFire {@link Region}s.
+ * <p>
+ * By default each message is written to the message region(s) as
+ * soon as it is received. If batching is enabled, messages are buffered
+ * per region and written with a single {@link Region#putAll} once
+ * {@link #setBatchSize batchSize} messages are pending or
+ * {@link #setBatchTimeout batchTimeout} milliseconds have elapsed,
+ * whichever happens first. A batch that could not be written is kept,
+ * ahead of messages added since, and written again by the next flush;
+ * entries written before the failure are then written twice. Once
+ * {@link #setMaxPendingMessages maxPendingMessages} messages are pending,
+ * for instance because writes keep failing, further messages are rejected
+ * until pending batches have been written. Pending messages are flushed
+ * when this handler is stopped, and messages sent once it is stopping
+ * are rejected.
+ * <p>
+ * If a binding has multiple consumer groups, the {@link FanOutMode}
+ * determines whether the regions for each group are written to in turn,
+ * concurrently, or concurrently without waiting for the writes to complete.
+ * <p>
+ * With {@link TransportMode#FUNCTION}, messages are not written to the
+ * regions; instead {@link MessageDeliveryFunction} is executed on the
+ * members hosting their buckets, once per member with only the messages
+ * for that member, and publishes them to the local consumer. If an
+ * execution fails, its messages are written to the region instead.
+ * <p>
+ * If {@link #setLocalDelivery local delivery} is enabled, messages for
+ * a consumer group with a consumer in this process are published to it
+ * directly, without serialization, if this member hosts the primary bucket
+ * for the message and the region has no redundant copies and is not persistent.
+ * <p>
+ * If {@link #setFusion fusion} is enabled, messages for a consumer group
+ * with a consumer in this process are always sent to it on the sending thread.
+ * <p>
+ * If a {@link #setSharedPayloadStore shared payload store} is set and a
+ * message is routed to more than one consumer group region, the message is
+ * stored once and each group region receives a {@link MessageReference}.
+ * With batching, shared messages are stored together, before the first
+ * batch referring to them is written. The reference for a group is
+ * released if the message could not be written or added to its batch.
+ * <p>
+ * If the {@link #setEnvelopeSize envelope size} is greater than one,
+ * messages in a batch that are destined for the same bucket are packed
+ * into a {@link MessageEnvelope} stored as a single region entry.
+ * <p>
+ * If a {@link #setCompactKeyGenerator compact key generator} is set, region
+ * entries are stored under a {@code Long} key instead of a {@link MessageKey}
+ * (see {@link KeyEncoding#LONG}).
+ * <p>
+ * If {@link #setMemberGrouping member grouping} is enabled, the entries of
+ * a batch are grouped by the member hosting their primary bucket, and the
+ * group for each member is written concurrently with its own putAll.
+ * <p>
+ * If a {@link #setStickyRouter sticky router} is set, messages without a
+ * partition key are routed to the same bucket for a while before rotating,
+ * so that a batch is written to a single member.
+ * <p>
+ * If compression is enabled, {@code byte[]} and {@code String} payloads
+ * of at least {@link #setCompressionThreshold compressionThreshold} bytes
+ * are compressed with the configured {@link CompressionCodec} and marked
+ * with the {@link GemfireMessageChannelBinder#COMPRESSION_HEADER} header.
  */
 public class SendingHandler extends AbstractMessageHandler implements Lifecycle {
 
+	/**
+	 * Capacity of the work queue for {@link #fanOutExecutor}. Once the
+	 * queue is full, the sending thread performs the write itself.
+	 */
+	private static final int FAN_OUT_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Capacity of the work queue for {@link #localDeliveryExecutor}. Once
+	 * the queue is full, the sending thread publishes the message itself.
+	 */
+	private static final int LOCAL_DELIVERY_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Capacity of the work queue for {@link #memberDispatchExecutor}. Once
+	 * the queue is full, the writing thread writes the group itself.
+	 */
+	private static final int MEMBER_DISPATCH_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Time in milliseconds to wait for in flight writes when stopping.
+	 */
+	private static final long SHUTDOWN_TIMEOUT = 10000;
+
 	/**
 	 * Binding name.
 	 */
@@ -71,9 +181,15 @@ public class SendingHandler extends AbstractMessageHandler implements Lifecycle
 	private final PartitionAttributes partitionAttributes;
 
 	/**
-	 * Sequence number for generating unique message IDs.
+	 * Sequence number generator for generating unique message IDs.
 	 */
-	private final AtomicLong sequence = new AtomicLong();
+	private volatile SequenceGenerator sequence = new SequenceGenerator(1);
+
+	/**
+	 * Generator of routing hashes for messages without a partition key.
+	 * If {@code null}, the routing hash of a message key is its hash code.
+	 */
+	private volatile StickyRouter stickyRouter;
 
 	/**
 	 * Process ID for this process; used for generating unique message IDs.
@@ -97,6 +213,30 @@ public class SendingHandler extends AbstractMessageHandler implements Lifecycle
 	 */
 	private final Region<String, ConsumerGroupTracker> consumerGroupsRegion;
 
+	/**
+	 * Immutable snapshot of the consumer groups registered for this binding.
+	 * Refreshed by {@link #consumerGroupListener} when the registration
+	 * for this binding changes.
+	 */
+	private volatile Set<String> groups = Collections.singleton(DEFAULT_CONSUMER_GROUP);
+
+	/**
+	 * Routes for {@link #groups}; rebuilt when the consumer groups change.
+	 */
+	private volatile RouteTable routeTable;
+
+	/**
+	 * Listener that refreshes {@link #groups} when the consumer
+	 * group registration for this binding changes.
+	 */
+	private final ConsumerGroupListener consumerGroupListener = new ConsumerGroupListener();
+
+	/**
+	 * Monitor held while {@link #groups} is updated, so that the snapshot read
+	 * when this handler starts is not applied after a newer listener event.
+	 */
+	private final Object groupsMonitor = new Object();
+
 	/**
 	 * Map of message regions used for producing messages.
 	 */
@@ -132,6 +272,195 @@ public class SendingHandler extends AbstractMessageHandler implements Lifecycle
 	 */
 	private volatile PartitionHandler partitionHandler;
 
+	/**
+	 * If {@code true}, messages are buffered and written to
+	 * message regions in batches.
+	 */
+	private volatile boolean batchingEnabled = false;
+
+	/**
+	 * Maximum number of messages buffered for a region before
+	 * the batch is written.
+	 */
+	private volatile int batchSize = 100;
+
+	/**
+	 * Maximum amount of time in milliseconds that a message
+	 * is buffered before the batch is written.
+	 */
+	private volatile long batchTimeout = 10;
+
+	/**
+	 * Maximum number of messages pending to be written, across all
+	 * regions, before messages are rejected.
+	 */
+	private volatile int maxPendingMessages = 10000;
+
+	/**
+	 * If {@code true}, payloads of at least {@link #compressionThreshold}
+	 * bytes are compressed with {@link #compressionCodec}.
+	 */
+	private volatile boolean compress = false;
+
+	/**
+	 * Minimum size in bytes of a payload to be compressed.
+	 */
+	private volatile int compressionThreshold = 1024;
+
+	/**
+	 * Codec used to compress payloads.
+	 */
+	private volatile CompressionCodec compressionCodec = new DeflaterCompressionCodec();
+
+	/**
+	 * Strategy for writing messages to multiple consumer group regions.
+	 */
+	private volatile FanOutMode fanOutMode = FanOutMode.SERIAL;
+
+	/**
+	 * Number of threads used to write to consumer group regions
+	 * concurrently if {@link #fanOutMode} is not {@link FanOutMode#SERIAL}.
+	 */
+	private volatile int fanOutThreads = 4;
+
+	/**
+	 * How messages are passed to the members hosting a consumer group.
+	 */
+	private volatile TransportMode transportMode = TransportMode.REGION;
+
+	/**
+	 * Number of messages written to a region because the delivery
+	 * function failed; see {@link TransportMode#FUNCTION}.
+	 */
+	private final AtomicLong functionFallbackCount = new AtomicLong();
+
+	/**
+	 * If {@code true}, messages are published directly to consumers bound in
+	 * this process; see {@link #deliverLocally}.
+	 */
+	private volatile boolean localDelivery = false;
+
+	/**
+	 * Consumers bound in this process.
+	 */
+	private volatile LocalConsumerRegistry localConsumers;
+
+	/**
+	 * This member; compared with the primary member for a message key.
+	 */
+	private volatile DistributedMember localMember;
+
+	/**
+	 * Executor that publishes messages to local consumers.
+	 */
+	private volatile ThreadPoolExecutor localDeliveryExecutor;
+
+	/**
+	 * Number of messages published directly to local consumers.
+	 */
+	private final AtomicLong localDeliveryCount = new AtomicLong();
+
+	/**
+	 * If {@code true}, messages for consumer groups with a consumer bound in
+	 * this process are always delivered to that consumer on the sending
+	 * thread; see {@link #setFusion}.
+	 */
+	private volatile boolean fusion = false;
+
+	/**
+	 * Number of messages sent to fused consumers.
+	 */
+	private final AtomicLong fusedCount = new AtomicLong();
+
+	/**
+	 * Store for messages shared by consumer groups, or {@code null} if each
+	 * group region holds its own copy of each message.
+	 */
+	private volatile SharedPayloadStore sharedPayloadStore;
+
+	/**
+	 * Shared messages added to batches that have not been stored in
+	 * {@link #sharedPayloadStore} yet, in the order they were sent.
+	 */
+	private final Map<MessageKey, Message<?>> pendingPayloads = new LinkedHashMap<>();
+
+	/**
+	 * Number of references to each of {@link #pendingPayloads}.
+	 */
+	private final Map<MessageKey, Integer> pendingReferences = new HashMap<>();
+
+	/**
+	 * Lock to guard access to {@link #pendingPayloads}; held while they are
+	 * stored, so that no batch referring to them is written before.
+	 */
+	private final Lock payloadLock = new ReentrantLock();
+
+	/**
+	 * Maximum number of messages packed into a single region entry when a
+	 * batch is written; see {@link #pack}. A value of 1 disables envelopes.
+	 */
+	private volatile int envelopeSize = 1;
+
+	/**
+	 * Number of region entries saved by packing messages into envelopes.
+	 */
+	private final AtomicLong envelopedCount = new AtomicLong();
+
+	/**
+	 * Generator of compact keys for {@link KeyEncoding#LONG}. If {@code null},
+	 * messages are stored under their {@link MessageKey}.
+	 */
+	private volatile CompactKeyGenerator compactKeyGenerator;
+
+	/**
+	 * Executor for writing to consumer group regions concurrently.
+	 */
+	private volatile ThreadPoolExecutor fanOutExecutor;
+
+	/**
+	 * If {@code true}, entries written with {@link Region#putAll} are
+	 * grouped by primary member and each group is written concurrently;
+	 * see {@link #putAll}.
+	 */
+	private volatile boolean memberGrouping = false;
+
+	/**
+	 * Number of threads used to write groups of entries for different
+	 * members concurrently if {@link #memberGrouping} is enabled.
+	 */
+	private volatile int memberDispatchThreads = 4;
+
+	/**
+	 * Executor for writing groups of entries for different members concurrently.
+	 */
+	private volatile ThreadPoolExecutor memberDispatchExecutor;
+
+	/**
+	 * Number of per member groups written concurrently.
+	 */
+	private final AtomicLong memberBatchCount = new AtomicLong();
+
+	/**
+	 * Messages pending to be written, keyed by the route they are destined for.
+	 */
+	private final Map<Route, Map<MessageKey, Message<?>>> pendingBatches = new HashMap<>();
+
+	/**
+	 * Lock to guard access to {@link #pendingBatches}.
+	 */
+	private final Lock batchLock = new ReentrantLock();
+
+	/**
+	 * Set, under {@link #batchLock}, before the final flush when this handler
+	 * is stopped; messages are no longer added to pending batches after that.
+	 */
+	private boolean batchesClosed;
+
+	/**
+	 * Executor used to write batches that have reached the batch timeout.
+	 */
+	private volatile ScheduledExecutorService batchFlushExecutor;
+
 
 	/**
 	 * Construct a {@link SendingHandler} for a binding.
@@ -175,127 +504,1415 @@ public class SendingHandler extends AbstractMessageHandler implements Lifecycle
 		this.properties = properties;
 	}
 
+	public boolean isBatchingEnabled() {
+		return batchingEnabled;
+	}
+
+	public void setBatchingEnabled(boolean batchingEnabled) {
+		this.batchingEnabled = batchingEnabled;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than zero");
+		this.batchSize = batchSize;
+	}
+
+	public long getBatchTimeout() {
+		return batchTimeout;
+	}
+
+	public void setBatchTimeout(long batchTimeout) {
+		Assert.isTrue(batchTimeout > 0, "batchTimeout must be greater than zero");
+		this.batchTimeout = batchTimeout;
+	}
+
+	public int getMaxPendingMessages() {
+		return maxPendingMessages;
+	}
+
 	/**
-	 * Create a {@link Region} instance used for publishing {@link Message} objects.
-	 * This region instance will not store buckets; it is assumed that the regions
-	 * created by consumers will host buckets.
+	 * Set the maximum number of messages pending to be written, across all
+	 * regions. Since a batch that could not be written is kept for the next
+	 * flush, this bounds the messages buffered while regions are unavailable;
+	 * once reached, messages are rejected with a {@link MessageDeliveryException}.
 	 *
-	 * @param regionName name of the message region
-	 * @return region for producing messages
+	 * @param maxPendingMessages maximum number of pending messages
 	 */
-	private Region<MessageKey, Message<?>> createProducerMessageRegion(String regionName) {
-		RegionFactory<MessageKey, Message<?>> factory = this.cache.createRegionFactory(this.producerRegionType);
-		return factory.setPartitionAttributes(this.partitionAttributes)
-				.addAsyncEventQueueId(regionName + GemfireMessageChannelBinder.QUEUE_POSTFIX)
-				.create(regionName);
+	public void setMaxPendingMessages(int maxPendingMessages) {
+		Assert.isTrue(maxPendingMessages > 0, "maxPendingMessages must be greater than zero");
+		this.maxPendingMessages = maxPendingMessages;
 	}
 
-	@Override
-	protected void handleMessageInternal(Message<?> message) throws Exception {
-		if (logger.isTraceEnabled()) {
-			logger.trace("Publishing message" + message);
-		}
+	public int getSequenceBlockSize() {
+		return this.sequence.getBlockSize();
+	}
+
+	/**
+	 * Set the number of message sequence ids reserved by a sending
+	 * thread at a time. A value greater than 1 removes contention between
+	 * sending threads, at the cost of sequence ids not being contiguous
+	 * across threads. This must be set before messages are sent.
+	 *
+	 * @param sequenceBlockSize number of sequence ids reserved at a time
+	 */
+	public void setSequenceBlockSize(int sequenceBlockSize) {
+		this.sequence = new SequenceGenerator(sequenceBlockSize);
+	}
+
+	public StickyRouter getStickyRouter() {
+		return stickyRouter;
+	}
+
+	/**
+	 * Set the generator of routing hashes for messages sent without a
+	 * partition key. If set, consecutive messages from a sending thread are
+	 * routed to the same bucket; otherwise each message key is routed by
+	 * its hash code, which spreads consecutive messages across buckets.
+	 *
+	 * @param stickyRouter sticky router, or {@code null} to route each
+	 * message by the hash code of its key
+	 */
+	public void setStickyRouter(StickyRouter stickyRouter) {
+		this.stickyRouter = stickyRouter;
+	}
+
+	public boolean isCompress() {
+		return compress;
+	}
 
-		for (String group : getGroups()) {
-			Region<MessageKey, Message<?>> region = getRegionForGroup(group);
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
 
-			Assert.notNull(this.partitionHandler, "PartitionHandler not initialized");
-			MessageKey key = this.partitionHandler.isPartitionedModule()
-					? nextMessageKey(this.partitionHandler.determinePartition(message))
-					: nextMessageKey();
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
 
-			region.putAll(Collections.singletonMap(key, message));
-		}
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public CompressionCodec getCompressionCodec() {
+		return compressionCodec;
+	}
+
+	public void setCompressionCodec(CompressionCodec compressionCodec) {
+		Assert.notNull(compressionCodec);
+		this.compressionCodec = compressionCodec;
+	}
+
+	public FanOutMode getFanOutMode() {
+		return fanOutMode;
+	}
+
+	public void setFanOutMode(FanOutMode fanOutMode) {
+		Assert.notNull(fanOutMode);
+		this.fanOutMode = fanOutMode;
+	}
+
+	public TransportMode getTransportMode() {
+		return transportMode;
+	}
+
+	public void setTransportMode(TransportMode transportMode) {
+		Assert.notNull(transportMode);
+		this.transportMode = transportMode;
 	}
 
 	/**
-	 * Return a set of consumer group names for the binder for this sender.
+	 * Return the number of messages written to a region because
+	 * {@link MessageDeliveryFunction} failed.
 	 *
-	 * @return set of consumer group names
+	 * @return number of messages written after a function failure
 	 */
-	private Set<String> getGroups() {
-		Set<String> groups;
-		ConsumerGroupTracker tracker = this.consumerGroupsRegion.get(this.name);
-		if (tracker == null) {
-			groups = Collections.singleton(DEFAULT_CONSUMER_GROUP);
-		}
-		else {
-			groups = tracker.groups();
-			if (groups.isEmpty()) {
-				groups = Collections.singleton(DEFAULT_CONSUMER_GROUP);
-			}
-		}
+	public long getFunctionFallbackCount() {
+		return this.functionFallbackCount.get();
+	}
+
+	public boolean isLocalDelivery() {
+		return localDelivery;
+	}
+
+	public void setLocalDelivery(boolean localDelivery) {
+		this.localDelivery = localDelivery;
+	}
 
-		return groups;
+	public void setLocalConsumers(LocalConsumerRegistry localConsumers) {
+		this.localConsumers = localConsumers;
 	}
 
 	/**
-	 * Return a region for publishing messages for a specified consumer group.
+	 * Return the number of messages published directly to consumers
+	 * bound in this process.
 	 *
-	 * @param group consumer group to publish messages to
-	 * @return region to publish messages to
-	 * @throws InterruptedException
+	 * @return number of locally delivered messages
 	 */
-	private Region<MessageKey, Message<?>> getRegionForGroup(String group) throws InterruptedException {
-		String regionName = createMessageRegionName(this.name, group);
-		Region<MessageKey, Message<?>> region = this.regionMap.get(regionName);
-		if (region == null) {
-			try {
-				this.regionCreationLock.lockInterruptibly();
-				region = this.regionMap.get(regionName);
-				if (region == null) {
-					region = createProducerMessageRegion(regionName);
-					this.regionMap.put(regionName, region);
-				}
-				if (this.partitionHandler == null) {
-					// this assumes that all regions for all groups have the same number of buckets
-					this.partitionHandler = new PartitionHandler(this.beanFactory, this.evaluationContext,
-							this.partitionSelector, this.properties,
-							PartitionRegionHelper.getPartitionRegionInfo(region).getConfiguredBucketCount());
-				}
-			}
-			finally {
-				this.regionCreationLock.unlock();
-			}
-		}
+	public long getLocalDeliveryCount() {
+		return this.localDeliveryCount.get();
+	}
 
-		return region;
+	public int getEnvelopeSize() {
+		return envelopeSize;
 	}
 
 	/**
-	 * Generate and return a new message key for a message.
+	 * Set the maximum number of messages for the same bucket that are packed
+	 * into a single region entry when a batch is written. Envelopes are only
+	 * formed from batches; see {@link #setBatchingEnabled}.
 	 *
-	 * @return new message key
+	 * @param envelopeSize maximum messages per entry; 1 disables envelopes
 	 */
-	private MessageKey nextMessageKey() {
-		return new MessageKey(sequence.getAndIncrement(), timestamp, pid);
+	public void setEnvelopeSize(int envelopeSize) {
+		Assert.isTrue(envelopeSize > 0, "envelopeSize must be greater than zero");
+		this.envelopeSize = envelopeSize;
 	}
 
 	/**
-	 * Generate and return a new message key for a message.
+	 * Return the number of region entries saved by packing messages into envelopes.
 	 *
-	 * @param partition the partition that the message should be assigned to
-	 * @return new message key
+	 * @return number of saved entries
 	 */
-	private MessageKey nextMessageKey(int partition) {
-		return new MessageKey(sequence.getAndIncrement(), timestamp, pid, partition);
+	public long getEnvelopedCount() {
+		return this.envelopedCount.get();
 	}
 
-	@Override
-	public void start() {
-		this.running = true;
+	public CompactKeyGenerator getCompactKeyGenerator() {
+		return compactKeyGenerator;
 	}
 
-	@Override
-	public void stop() {
-		this.running = false;
-		for (Region<MessageKey, Message<?>> region : this.regionMap.values()) {
-			region.close();
-		}
+	/**
+	 * Set the generator of compact keys. If set, messages written to a
+	 * region are stored under a {@code Long} key instead of their
+	 * {@link MessageKey}; see {@link #compact}.
+	 *
+	 * @param compactKeyGenerator compact key generator, or {@code null}
+	 * to store messages under their message key
+	 */
+	public void setCompactKeyGenerator(CompactKeyGenerator compactKeyGenerator) {
+		this.compactKeyGenerator = compactKeyGenerator;
 	}
 
-	@Override
-	public boolean isRunning() {
-		return this.running;
+	public SharedPayloadStore getSharedPayloadStore() {
+		return sharedPayloadStore;
+	}
+
+	/**
+	 * Set the store used to hold each message once if a binding has more than
+	 * one consumer group; the group regions then hold a {@link MessageReference}.
+	 * If {@code null}, each group region holds its own copy of each message.
+	 *
+	 * @param sharedPayloadStore shared payload store
+	 */
+	public void setSharedPayloadStore(SharedPayloadStore sharedPayloadStore) {
+		this.sharedPayloadStore = sharedPayloadStore;
+	}
+
+	public boolean isMemberGrouping() {
+		return memberGrouping;
+	}
+
+	/**
+	 * Set whether the entries of a batch are grouped by the member hosting
+	 * their primary bucket, and the groups for different members written
+	 * concurrently, so that writing a batch is not limited by the slowest
+	 * member. Only applies to {@link TransportMode#REGION}. This must be
+	 * set before this handler is started.
+	 *
+	 * @param memberGrouping if {@code true}, write per member groups concurrently
+	 */
+	public void setMemberGrouping(boolean memberGrouping) {
+		this.memberGrouping = memberGrouping;
+	}
+
+	public int getMemberDispatchThreads() {
+		return memberDispatchThreads;
+	}
+
+	public void setMemberDispatchThreads(int memberDispatchThreads) {
+		Assert.isTrue(memberDispatchThreads > 0, "memberDispatchThreads must be greater than zero");
+		this.memberDispatchThreads = memberDispatchThreads;
+	}
+
+	/**
+	 * Return the number of per member groups of entries written concurrently.
+	 *
+	 * @return number of per member groups
+	 */
+	public long getMemberBatchCount() {
+		return this.memberBatchCount.get();
+	}
+
+	public boolean isFusion() {
+		return fusion;
 	}
+
+	/**
+	 * Set whether messages for consumer groups with a consumer bound in this
+	 * process are delivered straight to that consumer on the sending
+	 * thread, fusing the producer and consumer into one pipeline. Fused
+	 * messages are not written to the group region, so other instances of
+	 * the group receive none of them and they are not redelivered if this
+	 * process fails.
+	 *
+	 * @param fusion if {@code true}, fuse with local consumers
+	 */
+	public void setFusion(boolean fusion) {
+		this.fusion = fusion;
+	}
+
+	/**
+	 * Return the number of messages sent to fused consumers.
+	 *
+	 * @return number of fused messages
+	 */
+	public long getFusedCount() {
+		return this.fusedCount.get();
+	}
+
+	/**
+	 * Return the consumer groups that messages are currently sent to
+	 * directly because fusion is enabled and the group has a consumer
+	 * bound in this process.
+	 *
+	 * @return fused consumer groups
+	 */
+	public Set<String> getFusedGroups() {
+		RouteTable routeTable = this.routeTable;
+		LocalConsumerRegistry localConsumers = this.localConsumers;
+		if (!this.fusion || routeTable == null || localConsumers == null) {
+			return Collections.emptySet();
+		}
+		Set<String> fused = new LinkedHashSet<>();
+		for (Route route : routeTable.routes) {
+			if (localConsumers.getConsumer(route.region.getName()) != null) {
+				fused.add(route.group);
+			}
+		}
+		return fused;
+	}
+
+	public int getFanOutThreads() {
+		return fanOutThreads;
+	}
+
+	public void setFanOutThreads(int fanOutThreads) {
+		Assert.isTrue(fanOutThreads > 0, "fanOutThreads must be greater than zero");
+		this.fanOutThreads = fanOutThreads;
+	}
+
+	/**
+	 * Create a {@link Region} instance used for publishing {@link Message} objects.
+	 * This region instance will not store buckets; it is assumed that the regions
+	 * created by consumers will host buckets.
+	 *
+	 * @param regionName name of the message region
+	 * @return region for producing messages
+	 */
+	private Region<MessageKey, Message<?>> createProducerMessageRegion(String regionName) {
+		RegionFactory<MessageKey, Message<?>> factory = this.cache.createRegionFactory(this.producerRegionType);
+		return factory.setPartitionAttributes(this.partitionAttributes)
+				.addAsyncEventQueueId(regionName + GemfireMessageChannelBinder.QUEUE_POSTFIX)
+				.create(regionName);
+	}
+
+	@Override
+	protected void handleMessageInternal(Message<?> message) throws Exception {
+		if (!this.running) {
+			throw new MessageDeliveryException(message, "Producer for binding '" + this.name + "' is not running");
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace("Publishing message" + message);
+		}
+
+		Message<?> original = message;
+		if (this.compress) {
+			message = compress(message);
+		}
+
+		// the same key is used for each consumer group; since each group
+		// has its own region, each group sees a contiguous sequence
+		Route[] routes = getRouteTable().routes;
+		MessageKey key = nextMessageKey(message);
+		if ((this.fusion && this.localConsumers != null) || this.localDeliveryExecutor != null) {
+			routes = deliverLocally(routes, key, original);
+		}
+		SharedPayloadStore sharedPayloadStore = this.sharedPayloadStore;
+		if (sharedPayloadStore != null && routes.length > 1 && this.transportMode == TransportMode.REGION) {
+			// store the message once; each group region gets a reference
+			if (this.batchingEnabled) {
+				addSharedPayload(key, message, routes.length);
+			}
+			else {
+				sharedPayloadStore.store(Collections.<MessageKey, Message<?>>singletonMap(key, message),
+						routes.length);
+			}
+			message = MessageReference.MESSAGE;
+		}
+		if (routes.length > 1 && this.fanOutExecutor != null) {
+			fanOut(routes, key, message);
+		}
+		else {
+			for (Route route : routes) {
+				write(route, key, message);
+			}
+		}
+	}
+
+	/**
+	 * Publish a message directly to the consumers bound in this process.
+	 * If {@link #fusion} is enabled, the message is delivered to each local
+	 * consumer on the calling thread. Otherwise, it is
+	 * handed off to {@link #localDeliveryExecutor} for routes whose region
+	 * has no redundant copies, is not persistent, and whose primary bucket
+	 * for the message key is hosted here. Since such a region holds the only
+	 * copy of the message in the memory of this process, skipping the region
+	 * does not weaken durability.
+	 * In either case the message is not serialized, and goes through the
+	 * consumer's own processing; see {@link LocalConsumer#deliver}.
+	 *
+	 * @param routes routes for the message
+	 * @param key message key
+	 * @param message uncompressed message
+	 * @return routes the message must still be written to
+	 */
+	private Route[] deliverLocally(Route[] routes, MessageKey key, Message<?> message) {
+		List<Route> remaining = null;
+		final Map<MessageKey, Message<?>> messages = Collections.<MessageKey, Message<?>>singletonMap(key, message);
+		for (int i = 0; i < routes.length; i++) {
+			final Route route = routes[i];
+			final LocalConsumer consumer = this.fusion || route.localDeliveryEligible
+					? this.localConsumers.getConsumer(route.region.getName())
+					: null;
+			boolean local = consumer != null && (this.fusion || this.localMember.equals(
+					PartitionRegionHelper.getPrimaryMemberForKey(route.region, key)));
+			if (local) {
+				if (remaining == null) {
+					remaining = new ArrayList<>(Arrays.asList(routes).subList(0, i));
+				}
+				if (this.fusion) {
+					consumer.deliver(route.region, messages);
+					this.fusedCount.incrementAndGet();
+				}
+				else {
+					this.localDeliveryExecutor.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								consumer.deliver(route.region, messages);
+							}
+							catch (Exception e) {
+								logger.error("Exception publishing message to local consumer for binding '"
+										+ name + "'", e);
+							}
+						}
+					});
+					this.localDeliveryCount.incrementAndGet();
+				}
+			}
+			else if (remaining != null) {
+				remaining.add(route);
+			}
+		}
+		return remaining == null ? routes : remaining.toArray(new Route[remaining.size()]);
+	}
+
+	/**
+	 * Return a message with a compressed payload if the payload is a
+	 * {@code byte[]} or {@code String} of at least {@link #compressionThreshold}
+	 * bytes; otherwise return the given message.
+	 *
+	 * @param message message to compress
+	 * @return message with compressed payload, or the original message
+	 * @throws IOException if compression failed
+	 */
+	private Message<?> compress(Message<?> message) throws IOException {
+		Object payload = message.getPayload();
+		boolean string = payload instanceof String;
+		byte[] bytes;
+		if (payload instanceof byte[]) {
+			bytes = (byte[]) payload;
+		}
+		else if (string) {
+			bytes = ((String) payload).getBytes(StandardCharsets.UTF_8);
+		}
+		else {
+			return message;
+		}
+		if (bytes.length < this.compressionThreshold) {
+			return message;
+		}
+
+		MessageBuilder<byte[]> builder = MessageBuilder.withPayload(this.compressionCodec.compress(bytes))
+				.copyHeaders(message.getHeaders())
+				.setHeader(COMPRESSION_HEADER, this.compressionCodec.getName());
+		if (string) {
+			builder.setHeader(COMPRESSED_STRING_HEADER, true);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Write a message to the regions for the given routes using
+	 * {@link #fanOutExecutor}. If {@link #fanOutMode} is
+	 * {@link FanOutMode#PARALLEL}, the last route is written by the
+	 * calling thread and this method returns once all writes complete.
+	 *
+	 * @param routes routes to write the message to
+	 * @param key message key
+	 * @param message message to write
+	 * @throws Exception if a write failed
+	 */
+	private void fanOut(Route[] routes, MessageKey key, Message<?> message) throws Exception {
+		if (this.fanOutMode == FanOutMode.ASYNC) {
+			for (Route route : routes) {
+				this.fanOutExecutor.execute(new RouteWriter(route, key, message));
+			}
+			return;
+		}
+
+		int last = routes.length - 1;
+		List<Future<Void>> futures = new ArrayList<>(last);
+		for (int i = 0; i < last; i++) {
+			Callable<Void> writer = new RouteWriter(routes[i], key, message);
+			futures.add(this.fanOutExecutor.submit(writer));
+		}
+
+		Exception exception = null;
+		try {
+			write(routes[last], key, message);
+		}
+		catch (Exception e) {
+			exception = e;
+		}
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			}
+			catch (ExecutionException e) {
+				if (exception == null) {
+					exception = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * Write a message to the region for a route, either directly or by
+	 * adding it to the pending batch for the route.
+	 *
+	 * @param route route to write the message to
+	 * @param key message key
+	 * @param message message to write
+	 */
+	private void write(Route route, MessageKey key, Message<?> message) {
+		if (this.batchingEnabled) {
+			addToBatch(route, key, message);
+		}
+		else {
+			try {
+				store(route, Collections.<MessageKey, Message<?>>singletonMap(key, message));
+			}
+			catch (RuntimeException e) {
+				releaseReference(key, message);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Add a message to the pending batch for a route. If the batch
+	 * has reached {@link #batchSize}, it is written to the route's region.
+	 * The message is rejected if {@link #maxPendingMessages} are pending.
+	 *
+	 * @param route route the message is destined for
+	 * @param key message key
+	 * @param message message to write
+	 */
+	private void addToBatch(Route route, MessageKey key, Message<?> message) {
+		Map<MessageKey, Message<?>> batch = null;
+		String rejection = null;
+		this.batchLock.lock();
+		try {
+			if (this.batchesClosed) {
+				rejection = "is stopped";
+			}
+			else if (getPendingCount() >= this.maxPendingMessages) {
+				rejection = "has " + this.maxPendingMessages + " messages pending to be written";
+			}
+			else {
+				Map<MessageKey, Message<?>> pending = this.pendingBatches.get(route);
+				if (pending == null) {
+					pending = new LinkedHashMap<>();
+					this.pendingBatches.put(route, pending);
+				}
+				pending.put(key, message);
+				if (pending.size() >= this.batchSize) {
+					batch = this.pendingBatches.remove(route);
+				}
+			}
+		}
+		finally {
+			this.batchLock.unlock();
+		}
+
+		if (rejection != null) {
+			releaseReference(key, message);
+			throw new MessageDeliveryException(message, "Producer for binding '" + this.name + "' " + rejection);
+		}
+		if (batch != null) {
+			try {
+				store(route, batch);
+			}
+			catch (RuntimeException e) {
+				requeue(route, batch);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Return the number of messages in pending batches, across all routes.
+	 * Must be called while holding {@link #batchLock}.
+	 *
+	 * @return number of pending messages
+	 */
+	private int getPendingCount() {
+		int pendingCount = 0;
+		for (Map<MessageKey, Message<?>> pending : this.pendingBatches.values()) {
+			pendingCount += pending.size();
+		}
+		return pendingCount;
+	}
+
+	/**
+	 * Add a shared message to be stored before the batches referring to it
+	 * are written; see {@link #storeSharedPayloads}.
+	 *
+	 * @param key message key
+	 * @param message message to store
+	 * @param references number of consumer groups the message is sent to
+	 */
+	private void addSharedPayload(MessageKey key, Message<?> message, int references) {
+		this.payloadLock.lock();
+		try {
+			this.pendingPayloads.put(key, message);
+			this.pendingReferences.put(key, references);
+		}
+		finally {
+			this.payloadLock.unlock();
+		}
+	}
+
+	/**
+	 * Store the shared messages added to batches since the last call, with
+	 * one {@link Region#putAll} per region of the {@link #sharedPayloadStore}.
+	 * If storing fails, the messages are kept and stored by the next call.
+	 */
+	private void storeSharedPayloads() {
+		this.payloadLock.lock();
+		try {
+			if (!this.pendingPayloads.isEmpty()) {
+				this.sharedPayloadStore.store(this.pendingPayloads, this.pendingReferences);
+				this.pendingPayloads.clear();
+				this.pendingReferences.clear();
+			}
+		}
+		finally {
+			this.payloadLock.unlock();
+		}
+	}
+
+	/**
+	 * Release the reference a consumer group holds to a shared message that
+	 * was not written to the group's region. Does nothing if the message is
+	 * not a {@link MessageReference}.
+	 *
+	 * @param key message key
+	 * @param message message that was not written
+	 */
+	private void releaseReference(MessageKey key, Message<?> message) {
+		if (!MessageReference.isReference(message)) {
+			return;
+		}
+		this.payloadLock.lock();
+		try {
+			Integer references = this.pendingReferences.get(key);
+			if (references != null) {
+				// not stored yet
+				if (references > 1) {
+					this.pendingReferences.put(key, references - 1);
+				}
+				else {
+					this.pendingReferences.remove(key);
+					this.pendingPayloads.remove(key);
+				}
+				return;
+			}
+		}
+		finally {
+			this.payloadLock.unlock();
+		}
+		this.sharedPayloadStore.release(Collections.singleton(key));
+	}
+
+	/**
+	 * Return a batch that could not be written to the pending batches,
+	 * ahead of the messages added for its route since, so that it is
+	 * written again by the next flush.
+	 *
+	 * @param route route the batch is destined for
+	 * @param batch messages that were not written
+	 */
+	private void requeue(Route route, Map<MessageKey, Message<?>> batch) {
+		this.batchLock.lock();
+		try {
+			Map<MessageKey, Message<?>> pending = this.pendingBatches.get(route);
+			if (pending != null) {
+				batch.putAll(pending);
+			}
+			this.pendingBatches.put(route, batch);
+		}
+		finally {
+			this.batchLock.unlock();
+		}
+	}
+
+	/**
+	 * Write all pending batches to their regions. Batches that could not
+	 * be written are kept for the next flush.
+	 *
+	 * @throws RuntimeException the first exception writing a batch
+	 */
+	public void flush() {
+		Map<Route, Map<MessageKey, Message<?>>> batches;
+		this.batchLock.lock();
+		try {
+			if (this.pendingBatches.isEmpty()) {
+				return;
+			}
+			batches = new HashMap<>(this.pendingBatches);
+			this.pendingBatches.clear();
+		}
+		finally {
+			this.batchLock.unlock();
+		}
+
+		RuntimeException exception = null;
+		for (Map.Entry<Route, Map<MessageKey, Message<?>>> entry : batches.entrySet()) {
+			try {
+				store(entry.getKey(), entry.getValue());
+			}
+			catch (RuntimeException e) {
+				requeue(entry.getKey(), entry.getValue());
+				if (exception == null) {
+					exception = e;
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * Pass messages to the members hosting a consumer group region
+	 * according to {@link #transportMode}: either write them to the
+	 * region with a single {@link Region#putAll}, or group them by the
+	 * member hosting their primary bucket and execute
+	 * {@link MessageDeliveryFunction} for each group; see {@link #deliver}.
+	 * Pending shared messages are stored first, since the messages may
+	 * refer to them.
+	 *
+	 * @param route route the messages are destined for
+	 * @param messages messages by key
+	 */
+	private void store(Route route, Map<MessageKey, Message<?>> messages) {
+		if (this.sharedPayloadStore != null) {
+			storeSharedPayloads();
+		}
+		int bucketCount = route.bucketCount;
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Region<Object, Message<?>> entryRegion = (Region) route.region;
+		if (this.transportMode == TransportMode.FUNCTION) {
+			for (Map<Object, Message<?>> group : groupByMember(entryRegion, messages, bucketCount)) {
+				deliver(entryRegion, group);
+			}
+		}
+		else {
+			Map<MessageKey, Message<?>> entries = (this.envelopeSize > 1 && messages.size() > 1)
+					? pack(messages, bucketCount) : messages;
+			CompactKeyGenerator compactKeyGenerator = this.compactKeyGenerator;
+			if (compactKeyGenerator == null) {
+				putAll(entryRegion, entries, bucketCount);
+			}
+			else {
+				Map<MessageKey, Long> compactKeys = getCompactKeys(route, entries.keySet(), compactKeyGenerator);
+				try {
+					putAll(entryRegion, compact(entries, compactKeys), bucketCount);
+				}
+				catch (RuntimeException e) {
+					if (this.batchingEnabled) {
+						// the batch is written again; keep the keys so that
+						// entries already written are overwritten
+						route.compactKeys.putAll(compactKeys);
+					}
+					throw e;
+				}
+				if (!route.compactKeys.isEmpty()) {
+					route.compactKeys.keySet().removeAll(compactKeys.keySet());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Execute {@link MessageDeliveryFunction} for messages hosted by a
+	 * single member, passing only those messages as the arguments, and
+	 * wait for it to complete. The function is not highly available; if
+	 * the execution fails (for instance because the member left or has
+	 * no consumer for the region), the messages are written to the region
+	 * so that they are delivered through its async event queue. Messages
+	 * the member published before failing are then delivered again;
+	 * see {@link AsyncEventListeningMessageProducer#setDuplicateDetection}.
+	 *
+	 * @param region region the messages are destined for
+	 * @param messages messages hosted by the same member
+	 */
+	private void deliver(Region<Object, Message<?>> region, Map<Object, Message<?>> messages) {
+		try {
+			FunctionService.onRegion(region)
+					.withFilter(messages.keySet())
+					.withArgs(new LinkedHashMap<>(messages))
+					.execute(MessageDeliveryFunction.ID)
+					.getResult();
+		}
+		catch (FunctionException e) {
+			logger.warn("Delivery function failed for region '" + region.getName()
+					+ "'; writing " + messages.size() + " messages to the region", e);
+			region.putAll(messages);
+			this.functionFallbackCount.addAndGet(messages.size());
+		}
+	}
+
+	/**
+	 * Write entries to a region. If {@link #memberDispatchExecutor} is
+	 * set and the entries are hosted by more than one member, the entries
+	 * are grouped by the member hosting the primary bucket for their key,
+	 * and the group for each member is written with its own
+	 * {@link Region#putAll} on {@link #memberDispatchExecutor}. The last
+	 * group is written by the calling thread, and this method returns
+	 * once all groups have been written.
+	 *
+	 * @param region region the entries are destined for
+	 * @param entries entries to write
+	 * @param bucketCount number of buckets in the region
+	 */
+	private void putAll(final Region<Object, Message<?>> region, Map<?, Message<?>> entries, int bucketCount) {
+		ThreadPoolExecutor executor = this.memberDispatchExecutor;
+		if (executor == null || entries.size() < 2) {
+			region.putAll(entries);
+			return;
+		}
+
+		List<Map<Object, Message<?>>> groups = groupByMember(region, entries, bucketCount);
+		if (groups.size() < 2) {
+			region.putAll(entries);
+			return;
+		}
+
+		int last = groups.size() - 1;
+		List<Future<?>> futures = new ArrayList<>(last);
+		for (int i = 0; i < last; i++) {
+			final Map<Object, Message<?>> group = groups.get(i);
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					region.putAll(group);
+				}
+			}));
+		}
+		this.memberBatchCount.addAndGet(groups.size());
+
+		RuntimeException exception = null;
+		try {
+			region.putAll(groups.get(last));
+		}
+		catch (RuntimeException e) {
+			exception = e;
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			}
+			catch (ExecutionException e) {
+				if (exception == null) {
+					exception = e.getCause() instanceof RuntimeException
+							? (RuntimeException) e.getCause()
+							: new MessagingException("Exception writing messages to " + region.getName(), e);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (exception == null) {
+					exception = new MessagingException("Interrupted writing messages to " + region.getName(), e);
+				}
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	/**
+	 * Group entries by the member hosting the primary bucket for their key,
+	 * according to the partition metadata of the region. The primary member
+	 * is looked up once per bucket; entries for buckets without a primary
+	 * (for instance because the bucket has not been created yet) form a
+	 * group of their own.
+	 *
+	 * @param region region the entries are destined for
+	 * @param entries entries to group
+	 * @param bucketCount number of buckets in the region
+	 * @return entries for each member
+	 */
+	private List<Map<Object, Message<?>>> groupByMember(Region<Object, Message<?>> region,
+			Map<?, Message<?>> entries, int bucketCount) {
+		Map<Integer, DistributedMember> primaries = new HashMap<>();
+		Map<DistributedMember, Map<Object, Message<?>>> groups = new LinkedHashMap<>();
+		for (Map.Entry<?, Message<?>> entry : entries.entrySet()) {
+			Object key = entry.getKey();
+			Integer bucket = bucket(key, bucketCount);
+			DistributedMember primary;
+			if (primaries.containsKey(bucket)) {
+				primary = primaries.get(bucket);
+			}
+			else {
+				primary = PartitionRegionHelper.getPrimaryMemberForKey(region, key);
+				primaries.put(bucket, primary);
+			}
+			Map<Object, Message<?>> group = groups.get(primary);
+			if (group == null) {
+				group = new LinkedHashMap<>();
+				groups.put(primary, group);
+			}
+			group.put(key, entry.getValue());
+		}
+		return new ArrayList<>(groups.values());
+	}
+
+	/**
+	 * Return the bucket GemFire selects for a {@link MessageKey} or a
+	 * compact key; see {@link MessageKeyPartitionResolver}.
+	 *
+	 * @param key region entry key
+	 * @param bucketCount number of buckets in the region
+	 * @return bucket for the key
+	 */
+	private static int bucket(Object key, int bucketCount) {
+		int routingHash = key instanceof MessageKey
+				? ((MessageKey) key).getRoutingHash()
+				: CompactKeyGenerator.getBucket((Long) key);
+		return Math.abs(routingHash % bucketCount);
+	}
+
+	/**
+	 * Return the compact key for each region entry key. An entry of a batch
+	 * that failed to be written gets the key it was assigned then; other
+	 * entries get a new key from the generator.
+	 *
+	 * @param route route the entries are destined for
+	 * @param keys region entry keys
+	 * @param compactKeyGenerator compact key generator
+	 * @return compact keys by region entry key
+	 */
+	private Map<MessageKey, Long> getCompactKeys(Route route, Collection<MessageKey> keys,
+			CompactKeyGenerator compactKeyGenerator) {
+		Map<MessageKey, Long> compactKeys = new HashMap<>(keys.size() * 2);
+		for (MessageKey key : keys) {
+			Long compactKey = route.compactKeys.isEmpty() ? null : route.compactKeys.get(key);
+			if (compactKey == null) {
+				compactKey = compactKeyGenerator.next(key.getRoutingHash(), route.bucketCount);
+			}
+			compactKeys.put(key, compactKey);
+		}
+		return compactKeys;
+	}
+
+	/**
+	 * Replace the keys of region entries with compact keys. Messages are
+	 * stored as they are, so a consumer only has the {@link MessageKey} of
+	 * messages packed in an envelope. A {@link MessageReference} is put in
+	 * an envelope, since the consumer needs its key to resolve it.
+	 *
+	 * @param entries region entries by message key
+	 * @param compactKeys compact keys by message key
+	 * @return region entries by compact key
+	 */
+	private Map<Long, Message<?>> compact(Map<MessageKey, Message<?>> entries, Map<MessageKey, Long> compactKeys) {
+		Map<Long, Message<?>> compacted = new LinkedHashMap<>();
+		for (Map.Entry<MessageKey, Message<?>> entry : entries.entrySet()) {
+			MessageKey key = entry.getKey();
+			Message<?> message = entry.getValue();
+			if (MessageReference.isReference(message)) {
+				message = MessageEnvelope.wrap(Collections.singletonList(key),
+						Collections.<Message<?>>singletonList(message));
+			}
+			compacted.put(compactKeys.get(key), message);
+		}
+		return compacted;
+	}
+
+	/**
+	 * Pack messages destined for the same bucket into envelopes of up to
+	 * {@link #envelopeSize} messages. Each envelope is stored under the key
+	 * of its first message, which routes it to the same bucket as all of
+	 * its messages. A message that is alone in its bucket is not packed.
+	 *
+	 * @param messages messages by key, in order
+	 * @param bucketCount number of buckets in the destination region
+	 * @return region entries to write
+	 */
+	private Map<MessageKey, Message<?>> pack(Map<MessageKey, Message<?>> messages, int bucketCount) {
+		Map<Integer, List<MessageKey>> buckets = new LinkedHashMap<>();
+		for (MessageKey key : messages.keySet()) {
+			Integer bucket = bucket(key, bucketCount);
+			List<MessageKey> keys = buckets.get(bucket);
+			if (keys == null) {
+				keys = new ArrayList<>();
+				buckets.put(bucket, keys);
+			}
+			keys.add(key);
+		}
+
+		Map<MessageKey, Message<?>> entries = new LinkedHashMap<>();
+		for (List<MessageKey> keys : buckets.values()) {
+			for (int i = 0; i < keys.size(); i += this.envelopeSize) {
+				List<MessageKey> envelopeKeys = keys.subList(i, Math.min(keys.size(), i + this.envelopeSize));
+				if (envelopeKeys.size() == 1) {
+					MessageKey key = envelopeKeys.get(0);
+					entries.put(key, messages.get(key));
+				}
+				else {
+					List<Message<?>> envelopeMessages = new ArrayList<>(envelopeKeys.size());
+					for (MessageKey key : envelopeKeys) {
+						envelopeMessages.add(messages.get(key));
+					}
+					entries.put(envelopeKeys.get(0), MessageEnvelope.wrap(
+							new ArrayList<>(envelopeKeys), envelopeMessages));
+				}
+			}
+		}
+		this.envelopedCount.addAndGet(messages.size() - entries.size());
+		return entries;
+	}
+
+	/**
+	 * Refresh the snapshot of consumer group names for this binding
+	 * from the consumer groups region.
+	 */
+	private void refreshGroups() {
+		updateGroups(this.consumerGroupsRegion.get(this.name));
+	}
+
+	/**
+	 * Update the snapshot of consumer group names for this binding.
+	 *
+	 * @param tracker consumer group registration for this binding;
+	 *                {@code null} if there is none
+	 */
+	private void updateGroups(ConsumerGroupTracker tracker) {
+		Set<String> groups;
+		if (tracker == null || tracker.groups().isEmpty()) {
+			groups = Collections.singleton(DEFAULT_CONSUMER_GROUP);
+		}
+		else {
+			groups = Collections.unmodifiableSet(new LinkedHashSet<>(tracker.groups()));
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Consumer groups for binding '" + this.name + "': " + groups);
+		}
+		synchronized (this.groupsMonitor) {
+			this.groups = groups;
+		}
+	}
+
+	/**
+	 * Return the route table for the current consumer group snapshot,
+	 * rebuilding it if the consumer groups for this binding have changed.
+	 *
+	 * @return route table for publishing messages
+	 * @throws InterruptedException
+	 */
+	private RouteTable getRouteTable() throws InterruptedException {
+		RouteTable routeTable = this.routeTable;
+		if (routeTable != null && routeTable.groups == this.groups) {
+			return routeTable;
+		}
+
+		this.regionCreationLock.lockInterruptibly();
+		try {
+			routeTable = this.routeTable;
+			Set<String> groups = this.groups;
+			while (routeTable == null || routeTable.groups != groups) {
+				routeTable = createRouteTable(groups);
+				this.routeTable = routeTable;
+				groups = this.groups;
+			}
+			return routeTable;
+		}
+		finally {
+			this.regionCreationLock.unlock();
+		}
+	}
+
+	/**
+	 * Create a route table for the given consumer groups, creating
+	 * message regions for groups that do not have one yet. This method
+	 * must be invoked while holding {@link #regionCreationLock}.
+	 *
+	 * @param groups consumer groups to route messages to
+	 * @return route table for the consumer groups
+	 */
+	private RouteTable createRouteTable(Set<String> groups) {
+		Route[] routes = new Route[groups.size()];
+		int i = 0;
+		for (String group : groups) {
+			String regionName = createMessageRegionName(this.name, group);
+			Region<MessageKey, Message<?>> region = this.regionMap.get(regionName);
+			if (region == null) {
+				// a consumer for the group may have created the region in this process
+				region = this.cache.getRegion(regionName);
+			}
+			if (region == null) {
+				region = createProducerMessageRegion(regionName);
+				this.regionMap.put(regionName, region);
+			}
+			int bucketCount = PartitionRegionHelper.getPartitionRegionInfo(region).getConfiguredBucketCount();
+			if (this.partitionHandler == null) {
+				// this assumes that all regions for all groups have the same number of buckets
+				this.partitionHandler = new PartitionHandler(this.beanFactory, this.evaluationContext,
+						this.partitionSelector, this.properties, bucketCount);
+			}
+			PartitionAttributes<?, ?> attributes = region.getAttributes().getPartitionAttributes();
+			boolean localDeliveryEligible = attributes.getLocalMaxMemory() > 0
+					&& attributes.getRedundantCopies() == 0
+					&& !region.getAttributes().getDataPolicy().withPersistence();
+			routes[i++] = new Route(group, region, bucketCount, localDeliveryEligible);
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Created route table for binding '" + this.name + "' and groups " + groups);
+		}
+		return new RouteTable(groups, routes);
+	}
+
+	/**
+	 * Generate and return a new message key for a message, using
+	 * the {@link PartitionHandler} to select a partition if this
+	 * is a partitioned module.
+	 *
+	 * @param message the message to generate a key for
+	 * @return new message key
+	 */
+	private MessageKey nextMessageKey(Message<?> message) {
+		return this.partitionHandler.isPartitionedModule()
+				? nextMessageKey(this.partitionHandler.determinePartition(message))
+				: nextMessageKey();
+	}
+
+	/**
+	 * Generate and return a new message key for a message.
+	 *
+	 * @return new message key
+	 */
+	private MessageKey nextMessageKey() {
+		StickyRouter stickyRouter = this.stickyRouter;
+		return stickyRouter == null
+				? new MessageKey(this.sequence.next(), this.timestamp, this.pid)
+				: nextMessageKey(stickyRouter.next());
+	}
+
+	/**
+	 * Generate and return a new message key for a message.
+	 *
+	 * @param partition the partition that the message should be assigned to
+	 * @return new message key
+	 */
+	private MessageKey nextMessageKey(int partition) {
+		return new MessageKey(this.sequence.next(), this.timestamp, this.pid, partition);
+	}
+
+	@Override
+	public void start() {
+		// register the listener before reading the region so that no
+		// registration changes are missed; events received in between
+		// wait for the read, so that they are applied after it
+		synchronized (this.groupsMonitor) {
+			this.consumerGroupsRegion.getAttributesMutator().addCacheListener(this.consumerGroupListener);
+			refreshGroups();
+		}
+		if (this.fanOutMode != FanOutMode.SERIAL && this.fanOutExecutor == null) {
+			this.fanOutExecutor = new ThreadPoolExecutor(this.fanOutThreads, this.fanOutThreads,
+					0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(FAN_OUT_QUEUE_CAPACITY),
+					new CustomizableThreadFactory("gemfire-binder-" + this.name + "-fan-out-"),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		if (this.localDelivery && this.localConsumers != null && this.localDeliveryExecutor == null) {
+			this.localMember = this.cache.getDistributedSystem().getDistributedMember();
+			this.localDeliveryExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(LOCAL_DELIVERY_QUEUE_CAPACITY),
+					new CustomizableThreadFactory("gemfire-binder-" + this.name + "-local-"),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		if (this.memberGrouping && this.memberDispatchExecutor == null) {
+			this.memberDispatchExecutor = new ThreadPoolExecutor(this.memberDispatchThreads,
+					this.memberDispatchThreads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(MEMBER_DISPATCH_QUEUE_CAPACITY),
+					new CustomizableThreadFactory("gemfire-binder-" + this.name + "-member-"),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		this.batchLock.lock();
+		try {
+			this.batchesClosed = false;
+		}
+		finally {
+			this.batchLock.unlock();
+		}
+		if (this.batchingEnabled && this.batchFlushExecutor == null) {
+			this.batchFlushExecutor = Executors.newSingleThreadScheduledExecutor(
+					new CustomizableThreadFactory("gemfire-binder-" + this.name + "-batch-"));
+			this.batchFlushExecutor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						flush();
+					}
+					catch (Exception e) {
+						// the batch is kept; an exception would cancel this task
+						logger.error("Exception writing batch for binding '" + name + "'; will retry", e);
+					}
+				}
+			}, this.batchTimeout, this.batchTimeout, TimeUnit.MILLISECONDS);
+		}
+		this.running = true;
+	}
+
+	@Override
+	public void stop() {
+		this.running = false;
+		this.consumerGroupsRegion.getAttributesMutator().removeCacheListener(this.consumerGroupListener);
+		if (this.fanOutExecutor != null) {
+			this.fanOutExecutor.shutdown();
+			try {
+				this.fanOutExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.fanOutExecutor = null;
+		}
+		if (this.localDeliveryExecutor != null) {
+			this.localDeliveryExecutor.shutdown();
+			try {
+				this.localDeliveryExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.localDeliveryExecutor = null;
+		}
+		if (this.batchFlushExecutor != null) {
+			this.batchFlushExecutor.shutdown();
+			try {
+				this.batchFlushExecutor.awaitTermination(this.batchTimeout, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.batchFlushExecutor = null;
+		}
+		// writes handed to the executors above may still have added to the
+		// batches; from here on messages are rejected instead
+		this.batchLock.lock();
+		try {
+			this.batchesClosed = true;
+		}
+		finally {
+			this.batchLock.unlock();
+		}
+		RuntimeException flushException = null;
+		try {
+			flush();
+		}
+		catch (RuntimeException e) {
+			flushException = e;
+		}
+		// shut down after the final flush, which may use it
+		if (this.memberDispatchExecutor != null) {
+			this.memberDispatchExecutor.shutdown();
+			try {
+				this.memberDispatchExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.memberDispatchExecutor = null;
+		}
+		for (Region<MessageKey, Message<?>> region : this.regionMap.values()) {
+			region.close();
+		}
+		if (flushException != null) {
+			throw new MessagingException("Pending messages for binding '" + this.name
+					+ "' could not be written", flushException);
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * {@link com.gemstone.gemfire.cache.CacheListener} that updates the
+	 * consumer group snapshot when the registration for this binding changes.
+	 * The snapshot is built from the event rather than read back from the
+	 * region, so that events applied out of order are not masked by a later read.
+	 */
+	private class ConsumerGroupListener extends CacheListenerAdapter<String, ConsumerGroupTracker> {
+
+		@Override
+		public void afterCreate(EntryEvent<String, ConsumerGroupTracker> event) {
+			onEvent(event, event.getNewValue());
+		}
+
+		@Override
+		public void afterUpdate(EntryEvent<String, ConsumerGroupTracker> event) {
+			onEvent(event, event.getNewValue());
+		}
+
+		@Override
+		public void afterInvalidate(EntryEvent<String, ConsumerGroupTracker> event) {
+			onEvent(event, null);
+		}
+
+		@Override
+		public void afterDestroy(EntryEvent<String, ConsumerGroupTracker> event) {
+			onEvent(event, null);
+		}
+
+		private void onEvent(EntryEvent<String, ConsumerGroupTracker> event, ConsumerGroupTracker tracker) {
+			if (name.equals(event.getKey())) {
+				updateGroups(tracker);
+			}
+		}
+	}
+
+	/**
+	 * Task that writes a message to the region for a {@link Route}.
+	 */
+	private class RouteWriter implements Runnable, Callable<Void> {
+
+		private final Route route;
+
+		private final MessageKey key;
+
+		private final Message<?> message;
+
+		private RouteWriter(Route route, MessageKey key, Message<?> message) {
+			this.route = route;
+			this.key = key;
+			this.message = message;
+		}
+
+		@Override
+		public Void call() {
+			write(this.route, this.key, this.message);
+			return null;
+		}
+
+		@Override
+		public void run() {
+			try {
+				call();
+			}
+			catch (Exception e) {
+				logger.error("Exception writing message for group '" + this.route.group
+						+ "' of binding '" + name + "'", e);
+			}
+		}
+	}
+
+	/**
+	 * Message route for a consumer group.
+	 */
+	private static final class Route {
+
+		/**
+		 * Consumer group name.
+		 */
+		private final String group;
+
+		/**
+		 * Region that stores messages for the consumer group.
+		 */
+		private final Region<MessageKey, Message<?>> region;
+
+		/**
+		 * Number of buckets configured for {@link #region}; used to
+		 * group messages by bucket and member when they are written.
+		 */
+		private final int bucketCount;
+
+		/**
+		 * Whether {@link #region} stores data in this process without
+		 * redundant copies or persistence, so that messages may be
+		 * delivered locally.
+		 */
+		private final boolean localDeliveryEligible;
+
+		/**
+		 * Compact keys assigned to the entries of batches that failed to
+		 * be written, so that each message is stored under the same key
+		 * when the batch is written again; see {@link KeyEncoding#LONG}.
+		 */
+		private final ConcurrentMap<MessageKey, Long> compactKeys = new ConcurrentHashMap<>();
+
+		private Route(String group, Region<MessageKey, Message<?>> region, int bucketCount,
+				boolean localDeliveryEligible) {
+			this.group = group;
+			this.region = region;
+			this.bucketCount = bucketCount;
+			this.localDeliveryEligible = localDeliveryEligible;
+		}
+	}
+
+	/**
+	 * Immutable set of {@link Route routes} for a consumer group snapshot.
+	 */
+	private static final class RouteTable {
+
+		/**
+		 * Consumer group snapshot that the routes were created for.
+		 */
+		private final Set<String> groups;
+
+		/**
+		 * Routes for each consumer group.
+		 */
+		private final Route[] routes;
+
+		private RouteTable(Set<String> groups, Route[] routes) {
+			this.groups = groups;
+			this.routes = routes;
+		}
+	}
+
 }
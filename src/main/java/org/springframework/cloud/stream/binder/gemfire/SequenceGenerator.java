@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * Generator of unique sequence ids for {@link MessageKey message keys}.
+ * <p>
+ * With a block size of 1, every id is taken from a shared counter.
+ * With a larger block size, each thread reserves a block of ids from
+ * the shared counter and hands them out without further coordination.
+ * This removes contention on the shared counter when many threads are
+ * sending messages; ids remain unique and increase monotonically for
+ * each thread, but ids generated by different threads are no longer
+ * contiguous.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Patrick Peralta
+ */
+public class SequenceGenerator {
+
+	/**
+	 * Shared counter from which ids (or blocks of ids) are reserved.
+	 */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * Number of ids reserved by a thread at a time.
+	 */
+	private final int blockSize;
+
+	/**
+	 * Block of ids reserved by the current thread. The first element
+	 * is the next id to hand out, the second is the (exclusive) end
+	 * of the block.
+	 */
+	private final ThreadLocal<long[]> block = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[2];
+		}
+	};
+
+
+	/**
+	 * Construct a {@code SequenceGenerator}.
+	 *
+	 * @param blockSize number of ids reserved by a thread at a time
+	 */
+	public SequenceGenerator(int blockSize) {
+		Assert.isTrue(blockSize > 0, "blockSize must be greater than zero");
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Return the number of ids reserved by a thread at a time.
+	 *
+	 * @return block size
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Return the next sequence id.
+	 *
+	 * @return unique sequence id
+	 */
+	public long next() {
+		if (this.blockSize == 1) {
+			return this.sequence.getAndIncrement();
+		}
+
+		long[] block = this.block.get();
+		if (block[0] == block[1]) {
+			block[0] = this.sequence.getAndAdd(this.blockSize);
+			block[1] = block[0] + this.blockSize;
+		}
+		return block[0]++;
+	}
+
+}
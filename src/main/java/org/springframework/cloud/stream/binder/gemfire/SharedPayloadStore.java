@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.gemstone.gemfire.cache.Region;
+
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Store that holds each message for a binding once, shared by all of
+ * its consumer groups. The region for each group holds a
+ * {@link MessageReference#MESSAGE reference message} under the message
+ * key instead of a copy of the message.
+ * <p>
+ * A second region holds the number of groups that have not consumed
+ * each message yet. As each group consumes a message it
+ * {@link #release releases} its reference; the message is removed once
+ * the count reaches zero. Counts are updated with compare-and-set
+ * operations, so groups may release references concurrently from
+ * different members.
+ * <p>
+ * The consumer group regions of the binding are colocated with the
+ * region that holds messages, so that a message is hosted by the same
+ * member as its references. Since references are only released as
+ * messages are removed from the group regions, consumers must remove
+ * consumed messages.
+ *
+ * @author Patrick Peralta
+ */
+public class SharedPayloadStore {
+
+	/**
+	 * Suffix for the name of the region that holds messages.
+	 */
+	public static final String PAYLOADS_POSTFIX = "_payloads";
+
+	/**
+	 * Suffix for the name of the region that holds reference counts.
+	 */
+	public static final String REFERENCES_POSTFIX = "_references";
+
+	private final Region<MessageKey, Message<?>> payloadRegion;
+
+	private final Region<MessageKey, Integer> referenceRegion;
+
+
+	/**
+	 * Construct a {@code SharedPayloadStore}.
+	 *
+	 * @param payloadRegion region that holds messages
+	 * @param referenceRegion region that holds reference counts
+	 */
+	public SharedPayloadStore(Region<MessageKey, Message<?>> payloadRegion,
+			Region<MessageKey, Integer> referenceRegion) {
+		Assert.notNull(payloadRegion, "payloadRegion must not be null");
+		Assert.notNull(referenceRegion, "referenceRegion must not be null");
+		this.payloadRegion = payloadRegion;
+		this.referenceRegion = referenceRegion;
+	}
+
+	/**
+	 * Store messages with the given number of references each. This
+	 * must complete before the references are written to the group regions.
+	 *
+	 * @param messages messages by key
+	 * @param references number of consumer groups the messages are sent to
+	 */
+	public void store(Map<MessageKey, Message<?>> messages, int references) {
+		Map<MessageKey, Integer> counts = new HashMap<>(messages.size() * 2);
+		Integer count = references;
+		for (MessageKey key : messages.keySet()) {
+			counts.put(key, count);
+		}
+		store(messages, counts);
+	}
+
+	/**
+	 * Store messages with their own number of references, with one
+	 * {@link Region#putAll} per region. This must complete before the
+	 * references are written to the group regions.
+	 *
+	 * @param messages messages by key
+	 * @param references number of consumer groups each message is sent to, by key
+	 */
+	public void store(Map<MessageKey, Message<?>> messages, Map<MessageKey, Integer> references) {
+		this.referenceRegion.putAll(references);
+		this.payloadRegion.putAll(messages);
+	}
+
+	/**
+	 * Return the message for a key.
+	 *
+	 * @param key message key
+	 * @return message, or {@code null} if it has been removed
+	 */
+	public Message<?> get(MessageKey key) {
+		return this.payloadRegion.get(key);
+	}
+
+	/**
+	 * Release one reference to each of the given messages, removing
+	 * messages that have no references left. The reference counts are
+	 * read with a single {@link Region#getAll}, and the messages without
+	 * references are removed with a single {@link Region#removeAll}.
+	 *
+	 * @param keys message keys
+	 */
+	public void release(Collection<MessageKey> keys) {
+		Map<MessageKey, Integer> counts = this.referenceRegion.getAll(keys);
+		List<MessageKey> unreferenced = new ArrayList<>();
+		for (MessageKey key : keys) {
+			if (release(key, counts.get(key))) {
+				unreferenced.add(key);
+			}
+		}
+		if (!unreferenced.isEmpty()) {
+			this.payloadRegion.removeAll(unreferenced);
+		}
+	}
+
+	/**
+	 * Release one reference to a message.
+	 *
+	 * @param key message key
+	 * @param count last known reference count, or {@code null} to read it
+	 * @return {@code true} if the message has no references left
+	 */
+	private boolean release(MessageKey key, Integer count) {
+		while (true) {
+			if (count == null) {
+				count = this.referenceRegion.get(key);
+				if (count == null) {
+					return false;
+				}
+			}
+			if (count <= 1) {
+				if (this.referenceRegion.remove(key, count)) {
+					return true;
+				}
+			}
+			else if (this.referenceRegion.replace(key, count, count - 1)) {
+				return false;
+			}
+			// the count was changed concurrently
+			count = null;
+		}
+	}
+
+	/**
+	 * Return the number of messages held by this store.
+	 *
+	 * @return number of messages
+	 */
+	public int size() {
+		return this.payloadRegion.size();
+	}
+
+}
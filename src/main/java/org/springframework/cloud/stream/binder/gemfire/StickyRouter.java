@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.util.Assert;
+
+/**
+ * Generator of routing hashes for messages sent without a partition key.
+ * Instead of a different hash (and therefore bucket) for every message,
+ * each thread keeps the same routing hash for a number of messages or a
+ * period of time, whichever ends first, before rotating to the next one.
+ * Consecutive messages from a thread then land in the same bucket, so a
+ * batch written with {@link com.gemstone.gemfire.cache.Region#putAll}
+ * goes to a single member.
+ * <p>
+ * Rotating threads take the next hash from a shared counter that starts
+ * at a random value, so that threads and processes spread across buckets.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Patrick Peralta
+ */
+public class StickyRouter {
+
+	/**
+	 * Number of messages sent with a routing hash before rotating;
+	 * 0 if there is no limit.
+	 */
+	private final int messages;
+
+	/**
+	 * Time in nanoseconds a routing hash is used before rotating;
+	 * 0 if there is no limit.
+	 */
+	private final long period;
+
+	/**
+	 * Next routing hash handed to a rotating thread.
+	 */
+	private final AtomicInteger nextHash = new AtomicInteger(new Random().nextInt());
+
+	/**
+	 * Routing state of the current thread. The first element is the
+	 * routing hash, the second is the number of messages left before
+	 * rotating, and the third is the time in nanoseconds after which
+	 * the thread rotates.
+	 */
+	private final ThreadLocal<long[]> state = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[3];
+		}
+	};
+
+
+	/**
+	 * Construct a {@code StickyRouter}.
+	 *
+	 * @param messages number of messages sent with a routing hash before
+	 * rotating, or 0 for no limit
+	 * @param period time in milliseconds a routing hash is used before
+	 * rotating, or 0 for no limit
+	 */
+	public StickyRouter(int messages, long period) {
+		Assert.isTrue(messages >= 0, "messages must not be negative");
+		Assert.isTrue(period >= 0, "period must not be negative");
+		Assert.isTrue(messages > 0 || period > 0, "messages or period must be greater than zero");
+		this.messages = messages;
+		this.period = TimeUnit.MILLISECONDS.toNanos(period);
+	}
+
+	/**
+	 * Return the routing hash for the next message sent by the current thread.
+	 *
+	 * @return routing hash
+	 */
+	public int next() {
+		long[] state = this.state.get();
+		long now = this.period > 0 ? System.nanoTime() : 0;
+		if (state[1] == 0 || (this.period > 0 && now - state[2] >= 0)) {
+			state[0] = this.nextHash.getAndIncrement();
+			state[1] = this.messages > 0 ? this.messages : -1;
+			state[2] = now + this.period;
+		}
+		state[1]--;
+		return (int) state[0];
+	}
+
+}
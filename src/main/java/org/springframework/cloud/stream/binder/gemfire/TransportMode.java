@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+/**
+ * Strategy used by {@link SendingHandler} for passing messages
+ * to the members hosting a consumer group.
+ *
+ * @author Patrick Peralta
+ */
+public enum TransportMode {
+
+	/**
+	 * Write messages as entries to the region for the consumer group;
+	 * consumers receive them from the region.
+	 */
+	REGION,
+
+	/**
+	 * Execute {@link MessageDeliveryFunction} on each member hosting
+	 * the buckets for the messages, which publishes them through its
+	 * local consumer. No region entries are created. If an execution
+	 * fails, its messages are written to the region instead, so
+	 * messages published by a member before it failed are delivered
+	 * again unless duplicate detection is enabled.
+	 */
+	FUNCTION
+
+}
@@ -32,6 +32,74 @@ public class GemfireBinderConfigurationProperties {
 
 	private boolean persistentQueue = false;
 
+	private boolean producerBatchingEnabled = false;
+
+	private int producerBatchSize = 100;
+
+	private long producerBatchTimeout = 10;
+
+	private int producerMaxPendingMessages = 10000;
+
+	private String producerFanOutMode = "SERIAL";
+
+	private int producerFanOutThreads = 4;
+
+	private int producerSequenceBlockSize = 1;
+
+	private boolean producerCompress = false;
+
+	private int compressionThreshold = 1024;
+
+	private boolean removeConsumedMessages = true;
+
+	private int consumerDispatchThreads = 1;
+
+	private boolean consumerBatchMode = false;
+
+	private boolean consumerOrderedDelivery = false;
+
+	private int reorderBufferCapacity = 1000;
+
+	private long reorderGapTimeout = 1000;
+
+	private boolean consumerDuplicateDetection = false;
+
+	private int duplicateWindowSize = 1024;
+
+	private String consumerDeliveryMode = "QUEUE";
+
+	private String producerTransportMode = "REGION";
+
+	private boolean producerLocalDelivery = false;
+
+	private boolean producerFusion = false;
+
+	private boolean sharedPayloads = false;
+
+	private int producerEnvelopeSize = 1;
+
+	private String producerKeyEncoding = "OBJECT";
+
+	private int producerStickyMessages = 0;
+
+	private long producerStickyPeriod = 0;
+
+	private boolean producerMemberGrouping = false;
+
+	private int producerMemberDispatchThreads = 4;
+
+	private int consumerHandOffCapacity = 1024;
+
+	private int dispatcherThreads = 0;
+
+	private String orderPolicy;
+
+	private int batchTimeInterval = 5;
+
+	private int maximumQueueMemory = 100;
+
+	private String diskStoreName;
+
 	public int getBatchSize() {
 		return batchSize;
 	}
@@ -63,4 +131,276 @@ public class GemfireBinderConfigurationProperties {
 	public void setPersistentQueue(boolean persistentQueue) {
 		this.persistentQueue = persistentQueue;
 	}
+
+	public boolean isProducerBatchingEnabled() {
+		return producerBatchingEnabled;
+	}
+
+	public void setProducerBatchingEnabled(boolean producerBatchingEnabled) {
+		this.producerBatchingEnabled = producerBatchingEnabled;
+	}
+
+	public int getProducerBatchSize() {
+		return producerBatchSize;
+	}
+
+	public void setProducerBatchSize(int producerBatchSize) {
+		this.producerBatchSize = producerBatchSize;
+	}
+
+	public long getProducerBatchTimeout() {
+		return producerBatchTimeout;
+	}
+
+	public void setProducerBatchTimeout(long producerBatchTimeout) {
+		this.producerBatchTimeout = producerBatchTimeout;
+	}
+
+	public int getProducerMaxPendingMessages() {
+		return producerMaxPendingMessages;
+	}
+
+	public void setProducerMaxPendingMessages(int producerMaxPendingMessages) {
+		this.producerMaxPendingMessages = producerMaxPendingMessages;
+	}
+
+	public String getProducerFanOutMode() {
+		return producerFanOutMode;
+	}
+
+	public void setProducerFanOutMode(String producerFanOutMode) {
+		this.producerFanOutMode = producerFanOutMode;
+	}
+
+	public int getProducerFanOutThreads() {
+		return producerFanOutThreads;
+	}
+
+	public void setProducerFanOutThreads(int producerFanOutThreads) {
+		this.producerFanOutThreads = producerFanOutThreads;
+	}
+
+	public int getProducerSequenceBlockSize() {
+		return producerSequenceBlockSize;
+	}
+
+	public void setProducerSequenceBlockSize(int producerSequenceBlockSize) {
+		this.producerSequenceBlockSize = producerSequenceBlockSize;
+	}
+
+	public boolean isProducerCompress() {
+		return producerCompress;
+	}
+
+	public void setProducerCompress(boolean producerCompress) {
+		this.producerCompress = producerCompress;
+	}
+
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public boolean isRemoveConsumedMessages() {
+		return removeConsumedMessages;
+	}
+
+	public void setRemoveConsumedMessages(boolean removeConsumedMessages) {
+		this.removeConsumedMessages = removeConsumedMessages;
+	}
+
+	public int getConsumerDispatchThreads() {
+		return consumerDispatchThreads;
+	}
+
+	public void setConsumerDispatchThreads(int consumerDispatchThreads) {
+		this.consumerDispatchThreads = consumerDispatchThreads;
+	}
+
+	public int getDispatcherThreads() {
+		return dispatcherThreads;
+	}
+
+	public void setDispatcherThreads(int dispatcherThreads) {
+		this.dispatcherThreads = dispatcherThreads;
+	}
+
+	public String getOrderPolicy() {
+		return orderPolicy;
+	}
+
+	public void setOrderPolicy(String orderPolicy) {
+		this.orderPolicy = orderPolicy;
+	}
+
+	public int getBatchTimeInterval() {
+		return batchTimeInterval;
+	}
+
+	public void setBatchTimeInterval(int batchTimeInterval) {
+		this.batchTimeInterval = batchTimeInterval;
+	}
+
+	public int getMaximumQueueMemory() {
+		return maximumQueueMemory;
+	}
+
+	public void setMaximumQueueMemory(int maximumQueueMemory) {
+		this.maximumQueueMemory = maximumQueueMemory;
+	}
+
+	public String getDiskStoreName() {
+		return diskStoreName;
+	}
+
+	public void setDiskStoreName(String diskStoreName) {
+		this.diskStoreName = diskStoreName;
+	}
+
+	public boolean isConsumerBatchMode() {
+		return consumerBatchMode;
+	}
+
+	public void setConsumerBatchMode(boolean consumerBatchMode) {
+		this.consumerBatchMode = consumerBatchMode;
+	}
+
+	public boolean isConsumerOrderedDelivery() {
+		return consumerOrderedDelivery;
+	}
+
+	public void setConsumerOrderedDelivery(boolean consumerOrderedDelivery) {
+		this.consumerOrderedDelivery = consumerOrderedDelivery;
+	}
+
+	public int getReorderBufferCapacity() {
+		return reorderBufferCapacity;
+	}
+
+	public void setReorderBufferCapacity(int reorderBufferCapacity) {
+		this.reorderBufferCapacity = reorderBufferCapacity;
+	}
+
+	public long getReorderGapTimeout() {
+		return reorderGapTimeout;
+	}
+
+	public void setReorderGapTimeout(long reorderGapTimeout) {
+		this.reorderGapTimeout = reorderGapTimeout;
+	}
+
+	public boolean isConsumerDuplicateDetection() {
+		return consumerDuplicateDetection;
+	}
+
+	public void setConsumerDuplicateDetection(boolean consumerDuplicateDetection) {
+		this.consumerDuplicateDetection = consumerDuplicateDetection;
+	}
+
+	public int getDuplicateWindowSize() {
+		return duplicateWindowSize;
+	}
+
+	public void setDuplicateWindowSize(int duplicateWindowSize) {
+		this.duplicateWindowSize = duplicateWindowSize;
+	}
+
+	public String getConsumerDeliveryMode() {
+		return consumerDeliveryMode;
+	}
+
+	public void setConsumerDeliveryMode(String consumerDeliveryMode) {
+		this.consumerDeliveryMode = consumerDeliveryMode;
+	}
+
+	public int getConsumerHandOffCapacity() {
+		return consumerHandOffCapacity;
+	}
+
+	public void setConsumerHandOffCapacity(int consumerHandOffCapacity) {
+		this.consumerHandOffCapacity = consumerHandOffCapacity;
+	}
+
+	public String getProducerTransportMode() {
+		return producerTransportMode;
+	}
+
+	public void setProducerTransportMode(String producerTransportMode) {
+		this.producerTransportMode = producerTransportMode;
+	}
+
+	public boolean isProducerLocalDelivery() {
+		return producerLocalDelivery;
+	}
+
+	public void setProducerLocalDelivery(boolean producerLocalDelivery) {
+		this.producerLocalDelivery = producerLocalDelivery;
+	}
+
+	public boolean isProducerFusion() {
+		return producerFusion;
+	}
+
+	public void setProducerFusion(boolean producerFusion) {
+		this.producerFusion = producerFusion;
+	}
+
+	public boolean isSharedPayloads() {
+		return sharedPayloads;
+	}
+
+	public void setSharedPayloads(boolean sharedPayloads) {
+		this.sharedPayloads = sharedPayloads;
+	}
+
+	public int getProducerEnvelopeSize() {
+		return producerEnvelopeSize;
+	}
+
+	public void setProducerEnvelopeSize(int producerEnvelopeSize) {
+		this.producerEnvelopeSize = producerEnvelopeSize;
+	}
+
+	public String getProducerKeyEncoding() {
+		return producerKeyEncoding;
+	}
+
+	public void setProducerKeyEncoding(String producerKeyEncoding) {
+		this.producerKeyEncoding = producerKeyEncoding;
+	}
+
+	public int getProducerStickyMessages() {
+		return producerStickyMessages;
+	}
+
+	public void setProducerStickyMessages(int producerStickyMessages) {
+		this.producerStickyMessages = producerStickyMessages;
+	}
+
+	public long getProducerStickyPeriod() {
+		return producerStickyPeriod;
+	}
+
+	public void setProducerStickyPeriod(long producerStickyPeriod) {
+		this.producerStickyPeriod = producerStickyPeriod;
+	}
+
+	public boolean isProducerMemberGrouping() {
+		return producerMemberGrouping;
+	}
+
+	public void setProducerMemberGrouping(boolean producerMemberGrouping) {
+		this.producerMemberGrouping = producerMemberGrouping;
+	}
+
+	public int getProducerMemberDispatchThreads() {
+		return producerMemberDispatchThreads;
+	}
+
+	public void setProducerMemberDispatchThreads(int producerMemberDispatchThreads) {
+		this.producerMemberDispatchThreads = producerMemberDispatchThreads;
+	}
 }
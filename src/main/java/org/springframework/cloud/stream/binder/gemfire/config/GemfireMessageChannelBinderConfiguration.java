@@ -18,15 +18,22 @@ package org.springframework.cloud.stream.binder.gemfire.config;
 
 import com.gemstone.gemfire.cache.Cache;
 import com.gemstone.gemfire.cache.RegionShortcut;
+import com.gemstone.gemfire.cache.wan.GatewaySender;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.stream.binder.gemfire.CompressionCodec;
+import org.springframework.cloud.stream.binder.gemfire.DeliveryMode;
+import org.springframework.cloud.stream.binder.gemfire.FanOutMode;
 import org.springframework.cloud.stream.binder.gemfire.GemfireMessageChannelBinder;
+import org.springframework.cloud.stream.binder.gemfire.KeyEncoding;
+import org.springframework.cloud.stream.binder.gemfire.TransportMode;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ImportResource;
+import org.springframework.util.StringUtils;
 
 /**
  * @author Patrick Peralta
@@ -43,6 +50,9 @@ public class GemfireMessageChannelBinderConfiguration {
 	@Autowired
 	public GemfireBinderConfigurationProperties properties;
 
+	@Autowired(required = false)
+	public CompressionCodec compressionCodec;
+
 	@Bean
 	public GemfireMessageChannelBinder messageChannelBinder() {
 		GemfireMessageChannelBinder binder = new GemfireMessageChannelBinder(this.cache);
@@ -60,6 +70,70 @@ public class GemfireMessageChannelBinderConfiguration {
 			logger.warn("Unsupported region type: {}", this.properties.getProducerRegionType());
 		}
 		binder.setPersistentQueue(this.properties.isPersistentQueue());
+		binder.setProducerBatchingEnabled(this.properties.isProducerBatchingEnabled());
+		binder.setProducerBatchSize(this.properties.getProducerBatchSize());
+		binder.setProducerBatchTimeout(this.properties.getProducerBatchTimeout());
+		binder.setProducerMaxPendingMessages(this.properties.getProducerMaxPendingMessages());
+		try {
+			binder.setProducerFanOutMode(FanOutMode.valueOf(this.properties.getProducerFanOutMode()));
+		}
+		catch (IllegalArgumentException e) {
+			logger.warn("Unsupported fan out mode: {}", this.properties.getProducerFanOutMode());
+		}
+		binder.setProducerFanOutThreads(this.properties.getProducerFanOutThreads());
+		binder.setProducerSequenceBlockSize(this.properties.getProducerSequenceBlockSize());
+		binder.setProducerCompress(this.properties.isProducerCompress());
+		binder.setCompressionThreshold(this.properties.getCompressionThreshold());
+		binder.setBatchTimeInterval(this.properties.getBatchTimeInterval());
+		binder.setMaximumQueueMemory(this.properties.getMaximumQueueMemory());
+		binder.setDiskStoreName(this.properties.getDiskStoreName());
+		binder.setRemoveConsumedMessages(this.properties.isRemoveConsumedMessages());
+		binder.setConsumerDispatchThreads(this.properties.getConsumerDispatchThreads());
+		binder.setConsumerBatchMode(this.properties.isConsumerBatchMode());
+		binder.setConsumerOrderedDelivery(this.properties.isConsumerOrderedDelivery());
+		binder.setReorderBufferCapacity(this.properties.getReorderBufferCapacity());
+		binder.setReorderGapTimeout(this.properties.getReorderGapTimeout());
+		binder.setConsumerDuplicateDetection(this.properties.isConsumerDuplicateDetection());
+		binder.setDuplicateWindowSize(this.properties.getDuplicateWindowSize());
+		try {
+			binder.setConsumerDeliveryMode(DeliveryMode.valueOf(this.properties.getConsumerDeliveryMode()));
+		}
+		catch (IllegalArgumentException e) {
+			logger.warn("Unsupported delivery mode: {}", this.properties.getConsumerDeliveryMode());
+		}
+		binder.setConsumerHandOffCapacity(this.properties.getConsumerHandOffCapacity());
+		try {
+			binder.setProducerTransportMode(TransportMode.valueOf(this.properties.getProducerTransportMode()));
+		}
+		catch (IllegalArgumentException e) {
+			logger.warn("Unsupported transport mode: {}", this.properties.getProducerTransportMode());
+		}
+		binder.setProducerLocalDelivery(this.properties.isProducerLocalDelivery());
+		binder.setProducerFusion(this.properties.isProducerFusion());
+		binder.setSharedPayloads(this.properties.isSharedPayloads());
+		binder.setProducerEnvelopeSize(this.properties.getProducerEnvelopeSize());
+		try {
+			binder.setProducerKeyEncoding(KeyEncoding.valueOf(this.properties.getProducerKeyEncoding()));
+		}
+		catch (IllegalArgumentException e) {
+			logger.warn("Unsupported key encoding: {}", this.properties.getProducerKeyEncoding());
+		}
+		binder.setProducerStickyMessages(this.properties.getProducerStickyMessages());
+		binder.setProducerStickyPeriod(this.properties.getProducerStickyPeriod());
+		binder.setProducerMemberGrouping(this.properties.isProducerMemberGrouping());
+		binder.setProducerMemberDispatchThreads(this.properties.getProducerMemberDispatchThreads());
+		binder.setDispatcherThreads(this.properties.getDispatcherThreads());
+		if (StringUtils.hasText(this.properties.getOrderPolicy())) {
+			try {
+				binder.setOrderPolicy(GatewaySender.OrderPolicy.valueOf(this.properties.getOrderPolicy()));
+			}
+			catch (IllegalArgumentException e) {
+				logger.warn("Unsupported order policy: {}", this.properties.getOrderPolicy());
+			}
+		}
+		if (this.compressionCodec != null) {
+			binder.setCompressionCodec(this.compressionCodec);
+		}
 
 		return binder;
 	}
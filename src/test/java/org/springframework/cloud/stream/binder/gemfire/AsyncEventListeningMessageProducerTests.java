@@ -0,0 +1,488 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import com.gemstone.gemfire.cache.Operation;
+import com.gemstone.gemfire.cache.Region;
+import com.gemstone.gemfire.cache.asyncqueue.AsyncEvent;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.NullChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * Tests for {@link AsyncEventListeningMessageProducer}.
+ *
+ * @author Patrick Peralta
+ */
+public class AsyncEventListeningMessageProducerTests {
+	private static final Logger logger = LoggerFactory.getLogger(AsyncEventListeningMessageProducerTests.class);
+
+	/**
+	 * Number of events per batch used to compare payload extraction time.
+	 */
+	private static final int EVENTS = 1000;
+
+	/**
+	 * Number of batches used to compare payload extraction time.
+	 */
+	private static final int ITERATIONS = 500;
+
+	/**
+	 * Test that the deserialized value is published if no payload expression is set.
+	 */
+	@Test
+	public void testDefaultPayload() {
+		QueueChannel channel = new QueueChannel();
+		AsyncEventListeningMessageProducer producer = createProducer(channel);
+		Message<String> message = new GenericMessage<>("hello world");
+
+		producer.processEvents(createEvents(1, message));
+
+		assertEquals(message, channel.receive(0));
+	}
+
+	/**
+	 * Test that a payload expression is evaluated against the event.
+	 */
+	@Test
+	public void testPayloadExpression() {
+		QueueChannel channel = new QueueChannel();
+		AsyncEventListeningMessageProducer producer = createProducer(channel);
+		producer.setExpressionPayload(new SpelExpressionParser().parseExpression("key"));
+
+		producer.processEvents(createEvents(1, new GenericMessage<>("hello world")));
+
+		assertEquals("key", channel.receive(0).getPayload());
+	}
+
+	/**
+	 * Test that in batch mode a batch of events is published as a single
+	 * message with the payloads of the events, that the headers of each
+	 * event are in the {@link GemfireMessageChannelBinder#BATCH_HEADERS}
+	 * header, and that the entries are removed once the batch is published.
+	 */
+	@Test
+	public void testBatchMode() {
+		ConcurrentMap<Object, Object> entries = new ConcurrentHashMap<>();
+		Region<?, ?> region = createRegion("batch", entries);
+		List<AsyncEvent> events = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			MessageKey key = new MessageKey(i, 1000L, 42);
+			Message<String> message = MessageBuilder.withPayload("message" + i).setHeader("index", i).build();
+			entries.put(key, message);
+			events.add(createEvent(key, message, region));
+		}
+		QueueChannel channel = new QueueChannel();
+		AsyncEventListeningMessageProducer producer = new AsyncEventListeningMessageProducer();
+		producer.setOutputChannel(channel);
+		producer.setBatchMode(true);
+		producer.afterPropertiesSet();
+		producer.start();
+
+		producer.processEvents(events);
+
+		Message<?> batch = channel.receive(0);
+		assertNull(channel.receive(0));
+		assertEquals(Arrays.asList("message0", "message1", "message2"), batch.getPayload());
+		@SuppressWarnings("unchecked")
+		List<MessageHeaders> headers = (List<MessageHeaders>) batch.getHeaders().get(
+				GemfireMessageChannelBinder.BATCH_HEADERS);
+		assertEquals(3, headers.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i, headers.get(i).get("index"));
+		}
+		assertTrue(entries.isEmpty());
+	}
+
+	/**
+	 * Test that with multiple dispatch threads the events for each
+	 * partition are published in order by a single thread, and that
+	 * {@link AsyncEventListeningMessageProducer#processEvents} returns
+	 * once every lane has been published.
+	 */
+	@Test
+	public void testDispatchInParallel() {
+		final int partitions = 4;
+		final int messagesPerPartition = 50;
+		final List<List<Integer>> received = new ArrayList<>();
+		for (int i = 0; i < partitions; i++) {
+			received.add(Collections.synchronizedList(new ArrayList<Integer>()));
+		}
+		final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		DirectChannel channel = new DirectChannel();
+		channel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> message) throws MessagingException {
+				threads.add(Thread.currentThread().getName());
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+				received.get((Integer) message.getHeaders().get("partition")).add((Integer) message.getPayload());
+			}
+		});
+		AsyncEventListeningMessageProducer producer = new AsyncEventListeningMessageProducer();
+		producer.setOutputChannel(channel);
+		producer.setRemoveConsumedMessages(false);
+		producer.setDispatchThreads(partitions);
+		producer.afterPropertiesSet();
+		producer.start();
+
+		List<AsyncEvent> events = new ArrayList<>();
+		for (int i = 0; i < messagesPerPartition; i++) {
+			for (int partition = 0; partition < partitions; partition++) {
+				MessageKey key = new MessageKey(i, 1000L, 42, partition);
+				events.add(createEvent(key, MessageBuilder.withPayload(i).setHeader("partition", partition).build(),
+						null));
+			}
+		}
+		try {
+			producer.processEvents(events);
+
+			for (List<Integer> partition : received) {
+				assertEquals(messagesPerPartition, partition.size());
+				for (int i = 0; i < messagesPerPartition; i++) {
+					assertEquals(Integer.valueOf(i), partition.get(i));
+				}
+			}
+			assertTrue(threads.size() > 1);
+		}
+		finally {
+			producer.stop();
+		}
+	}
+
+	/**
+	 * Test that a message is not dropped as a duplicate when it is
+	 * redelivered after publishing it failed, and that it is dropped
+	 * once it has been published.
+	 */
+	@Test
+	public void testDuplicateDetectionAfterFailure() {
+		final List<Message<?>> received = new ArrayList<>();
+		final AtomicBoolean fail = new AtomicBoolean(true);
+		DirectChannel channel = new DirectChannel();
+		channel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> message) throws MessagingException {
+				if (fail.getAndSet(false)) {
+					throw new MessagingException(message, "failed");
+				}
+				received.add(message);
+			}
+		});
+		AsyncEventListeningMessageProducer producer = new AsyncEventListeningMessageProducer();
+		producer.setOutputChannel(channel);
+		producer.setRemoveConsumedMessages(false);
+		producer.setDuplicateDetection(true);
+		producer.afterPropertiesSet();
+		producer.start();
+
+		List<AsyncEvent> events = Collections.singletonList(
+				createEvent(new MessageKey(1, 1000L, 42), new GenericMessage<>("hello world"), null));
+		try {
+			producer.processEvents(events);
+			fail("Expected publishing to fail");
+		}
+		catch (MessagingException e) {
+			// the queue redelivers the batch
+		}
+		producer.processEvents(events);
+		producer.processEvents(events);
+
+		assertEquals(1, received.size());
+		assertEquals(1, producer.getDuplicateMessageFilter().getDuplicateCount());
+	}
+
+	/**
+	 * Test that the reference to a shared message is only released once the
+	 * message has been published, so that a batch redelivered after the
+	 * consumer failed still resolves the message, and that the message is
+	 * removed once every consumer group has released its reference.
+	 */
+	@Test
+	public void testSharedPayloadReleasedAfterRedelivery() {
+		ConcurrentMap<Object, Object> payloads = new ConcurrentHashMap<>();
+		ConcurrentMap<Object, Object> references = new ConcurrentHashMap<>();
+		SharedPayloadStore store = new SharedPayloadStore(
+				this.<MessageKey, Message<?>>createRegion("payloads", payloads),
+				this.<MessageKey, Integer>createRegion("references", references));
+		MessageKey key = new MessageKey(1, 1000L, 42);
+		store.store(Collections.<MessageKey, Message<?>>singletonMap(key, new GenericMessage<>("hello world")), 2);
+
+		final List<Message<?>> received = new ArrayList<>();
+		final AtomicBoolean fail = new AtomicBoolean(true);
+		DirectChannel channel = new DirectChannel();
+		channel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> message) throws MessagingException {
+				if (fail.getAndSet(false)) {
+					throw new MessagingException(message, "failed");
+				}
+				received.add(message);
+			}
+		});
+		ConcurrentMap<Object, Object> groupA = new ConcurrentHashMap<>();
+		groupA.put(key, MessageReference.MESSAGE);
+		AsyncEventListeningMessageProducer producer = createSharedPayloadProducer(channel, store);
+		List<AsyncEvent> events = Collections.singletonList(
+				createEvent(key, MessageReference.MESSAGE, createRegion("a", groupA)));
+		try {
+			producer.processEvents(events);
+			fail("Expected publishing to fail");
+		}
+		catch (MessagingException e) {
+			// the queue redelivers the batch
+		}
+		assertEquals(Integer.valueOf(2), references.get(key));
+		assertTrue(groupA.containsKey(key));
+
+		producer.processEvents(events);
+		assertEquals(1, received.size());
+		assertEquals("hello world", received.get(0).getPayload());
+		assertEquals(Integer.valueOf(1), references.get(key));
+		assertTrue(groupA.isEmpty());
+		assertEquals(1, store.size());
+
+		QueueChannel channelB = new QueueChannel();
+		ConcurrentMap<Object, Object> groupB = new ConcurrentHashMap<>();
+		groupB.put(key, MessageReference.MESSAGE);
+		createSharedPayloadProducer(channelB, store).processEvents(Collections.singletonList(
+				createEvent(key, MessageReference.MESSAGE, createRegion("b", groupB))));
+		assertEquals("hello world", channelB.receive(0).getPayload());
+		assertTrue(groupB.isEmpty());
+		assertTrue(references.isEmpty());
+		assertEquals(0, store.size());
+	}
+
+	/**
+	 * Test that messages delivered without going through the region, as by
+	 * {@link MessageDeliveryFunction}, are processed like events read from
+	 * the region (here, duplicate detection and the payload expression
+	 * apply), and are not removed from the region.
+	 */
+	@Test
+	public void testDeliver() {
+		QueueChannel channel = new QueueChannel();
+		AsyncEventListeningMessageProducer producer = new AsyncEventListeningMessageProducer();
+		producer.setOutputChannel(channel);
+		producer.setDuplicateDetection(true);
+		producer.setExpressionPayload(new SpelExpressionParser().parseExpression("deserializedValue.payload"));
+		producer.afterPropertiesSet();
+		producer.start();
+
+		Region<?, ?> region = (Region<?, ?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {Region.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		Map<MessageKey, Message<?>> messages = new LinkedHashMap<>();
+		messages.put(new MessageKey(1, 1000L, 42), new GenericMessage<>("first"));
+		messages.put(new MessageKey(2, 1000L, 42), new GenericMessage<>("second"));
+		producer.deliver(region, messages);
+		producer.deliver(region, messages);
+
+		assertEquals("first", channel.receive(0).getPayload());
+		assertEquals("second", channel.receive(0).getPayload());
+		assertNull(channel.receive(0));
+		assertEquals(2, producer.getDuplicateMessageFilter().getDuplicateCount());
+	}
+
+	/**
+	 * Compare the time to publish events without a payload expression, with
+	 * an interpreted expression and with a compiled expression. Timings
+	 * are logged, not asserted.
+	 */
+	@Test
+	public void testComparePayloadExtraction() {
+		List<AsyncEvent> events = createEvents(EVENTS, new GenericMessage<>("hello world"));
+
+		AsyncEventListeningMessageProducer direct = createProducer(new NullChannel());
+		AsyncEventListeningMessageProducer interpreted = createProducer(new NullChannel());
+		interpreted.setExpressionPayload(new SpelExpressionParser().parseExpression("deserializedValue"));
+		AsyncEventListeningMessageProducer compiled = createProducer(new NullChannel());
+		compiled.setExpressionPayload(new SpelExpressionParser(new SpelParserConfiguration(
+				SpelCompilerMode.MIXED, getClass().getClassLoader())).parseExpression("deserializedValue"));
+
+		for (int i = 0; i < 2; i++) {
+			logger.info("ns per event; direct: {}, interpreted: {}, compiled: {}",
+					time(direct, events), time(interpreted, events), time(compiled, events));
+		}
+	}
+
+	private long time(AsyncEventListeningMessageProducer producer, List<AsyncEvent> events) {
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			producer.processEvents(events);
+		}
+		return (System.nanoTime() - start) / ((long) ITERATIONS * events.size());
+	}
+
+	private AsyncEventListeningMessageProducer createProducer(MessageChannel channel) {
+		AsyncEventListeningMessageProducer producer = new AsyncEventListeningMessageProducer();
+		producer.setOutputChannel(channel);
+		producer.setRemoveConsumedMessages(false);
+		producer.afterPropertiesSet();
+		producer.start();
+		return producer;
+	}
+
+	private AsyncEventListeningMessageProducer createSharedPayloadProducer(MessageChannel channel,
+			SharedPayloadStore store) {
+		AsyncEventListeningMessageProducer producer = new AsyncEventListeningMessageProducer();
+		producer.setOutputChannel(channel);
+		producer.setSharedPayloadStore(store);
+		producer.afterPropertiesSet();
+		producer.start();
+		return producer;
+	}
+
+	/**
+	 * Create a {@link Region} backed by a map, supporting the operations
+	 * used by {@link AsyncEventListeningMessageProducer} and
+	 * {@link SharedPayloadStore}.
+	 *
+	 * @param name region name
+	 * @param map map holding the region entries
+	 * @return region
+	 */
+	@SuppressWarnings("unchecked")
+	private <K, V> Region<K, V> createRegion(final String name, final ConcurrentMap<Object, Object> map) {
+		return (Region<K, V>) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {Region.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						switch (method.getName()) {
+							case "getName":
+								return name;
+							case "size":
+								return map.size();
+							case "get":
+								return map.get(args[0]);
+							case "getAll":
+								Map<Object, Object> values = new HashMap<>();
+								for (Object key : (Collection<?>) args[0]) {
+									values.put(key, map.get(key));
+								}
+								return values;
+							case "putAll":
+								map.putAll((Map<?, ?>) args[0]);
+								return null;
+							case "remove":
+								return args.length == 1 ? map.remove(args[0]) : map.remove(args[0], args[1]);
+							case "replace":
+								return args.length == 2 ? map.replace(args[0], args[1])
+										: map.replace(args[0], args[1], args[2]);
+							case "removeAll":
+								for (Object key : (Collection<?>) args[0]) {
+									map.remove(key);
+								}
+								return null;
+							case "hashCode":
+								return System.identityHashCode(proxy);
+							case "equals":
+								return proxy == args[0];
+							default:
+								throw new UnsupportedOperationException(method.getName());
+						}
+					}
+				});
+	}
+
+	/**
+	 * Create {@link AsyncEvent}s for a {@link Operation#PUTALL_CREATE}
+	 * of the given value with the key {@code "key"}.
+	 *
+	 * @param count number of events
+	 * @param value deserialized value of the events
+	 * @return list of events
+	 */
+	private List<AsyncEvent> createEvents(int count, final Object value) {
+		AsyncEvent event = createEvent("key", value, null);
+		List<AsyncEvent> events = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			events.add(event);
+		}
+		return events;
+	}
+
+	/**
+	 * Create an {@link AsyncEvent} for a {@link Operation#PUTALL_CREATE}.
+	 *
+	 * @param key key of the event
+	 * @param value deserialized value of the event
+	 * @param region region of the event, may be {@code null}
+	 * @return event
+	 */
+	private AsyncEvent createEvent(final Object key, final Object value, final Region<?, ?> region) {
+		return (AsyncEvent) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] {AsyncEvent.class}, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						switch (method.getName()) {
+							case "getOperation":
+								return Operation.PUTALL_CREATE;
+							case "getDeserializedValue":
+								return value;
+							case "getKey":
+								return key;
+							case "getRegion":
+								return region;
+							default:
+								throw new UnsupportedOperationException(method.getName());
+						}
+					}
+				});
+	}
+
+}
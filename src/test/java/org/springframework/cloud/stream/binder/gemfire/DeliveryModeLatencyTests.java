@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.gemstone.gemfire.cache.Cache;
+import com.gemstone.gemfire.cache.CacheFactory;
+import com.gemstone.gemfire.cache.Region;
+import com.gemstone.gemfire.cache.RegionFactory;
+import com.gemstone.gemfire.cache.RegionShortcut;
+import com.gemstone.gemfire.cache.asyncqueue.AsyncEventQueue;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+
+/**
+ * Compare end to end latency of {@link DeliveryMode#QUEUE} and
+ * {@link DeliveryMode#LISTENER} in a single member. Messages are
+ * written one at a time with a short pause between writes; the
+ * p50 and p99 latencies are logged, not asserted.
+ *
+ * @author Patrick Peralta
+ */
+public class DeliveryModeLatencyTests {
+	private static final Logger logger = LoggerFactory.getLogger(DeliveryModeLatencyTests.class);
+
+	/**
+	 * Number of messages written for each delivery mode.
+	 */
+	private static final int MESSAGES = 5000;
+
+	/**
+	 * Pause in nanoseconds between writes.
+	 */
+	private static final long PAUSE = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private static Cache cache;
+
+	@BeforeClass
+	public static void createCache() {
+		cache = new CacheFactory()
+				.set("mcast-port", "0")
+				.set("locators", "")
+				.set("log-level", "warning")
+				.create();
+	}
+
+	@AfterClass
+	public static void closeCache() {
+		if (cache != null) {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Log the latency percentiles for both delivery modes.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompareLatency() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			long[] queue = measure(DeliveryMode.QUEUE, "queue" + i);
+			long[] listener = measure(DeliveryMode.LISTENER, "listener" + i);
+			logger.info("latency in µs; queue p50: {}, p99: {}; listener p50: {}, p99: {}",
+					percentile(queue, 50), percentile(queue, 99),
+					percentile(listener, 50), percentile(listener, 99));
+		}
+	}
+
+	/**
+	 * Write messages containing the time they were written to a region
+	 * consumed with the given delivery mode, and return the latency
+	 * of each message in microseconds.
+	 */
+	private long[] measure(DeliveryMode mode, String regionName) throws Exception {
+		final long[] latencies = new long[MESSAGES];
+		final AtomicInteger received = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(MESSAGES);
+		DirectChannel channel = new DirectChannel();
+		channel.subscribe(new MessageHandler() {
+			@Override
+			public void handleMessage(Message<?> message) throws MessagingException {
+				long latency = System.nanoTime() - (Long) message.getPayload();
+				latencies[received.getAndIncrement()] = TimeUnit.NANOSECONDS.toMicros(latency);
+				latch.countDown();
+			}
+		});
+
+		RegionFactory<Long, Long> regionFactory = cache.createRegionFactory(RegionShortcut.PARTITION);
+		MessageProducerSupport producer;
+		if (mode == DeliveryMode.QUEUE) {
+			AsyncEventListeningMessageProducer queueProducer = new AsyncEventListeningMessageProducer();
+			AsyncEventQueue queue = cache.createAsyncEventQueueFactory()
+					.setParallel(true)
+					.setBatchTimeInterval(5)
+					.create(regionName + "-queue", queueProducer);
+			regionFactory.addAsyncEventQueueId(queue.getId());
+			producer = queueProducer;
+		}
+		else {
+			CacheListenerMessageProducer listenerProducer = new CacheListenerMessageProducer();
+			regionFactory.addCacheListener(listenerProducer.<Long, Long>getCacheListener());
+			producer = listenerProducer;
+		}
+		producer.setOutputChannel(channel);
+		producer.afterPropertiesSet();
+		producer.start();
+
+		Region<Long, Long> region = regionFactory.create(regionName);
+		try {
+			for (long i = 0; i < MESSAGES; i++) {
+				region.put(i, System.nanoTime());
+				LockSupport.parkNanos(PAUSE);
+			}
+			assertTrue(latch.await(30, TimeUnit.SECONDS));
+			assertEquals(MESSAGES, received.get());
+		}
+		finally {
+			producer.stop();
+			region.destroyRegion();
+		}
+		return latencies;
+	}
+
+	private static long percentile(long[] values, int percentile) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+	}
+
+}
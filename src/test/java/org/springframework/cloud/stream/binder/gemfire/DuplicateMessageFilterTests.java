@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests for {@link DuplicateMessageFilter}.
+ *
+ * @author Patrick Peralta
+ */
+public class DuplicateMessageFilterTests {
+	private static final Logger logger = LoggerFactory.getLogger(DuplicateMessageFilterTests.class);
+
+	/**
+	 * Test that duplicates within the window are dropped.
+	 */
+	@Test
+	public void testDuplicates() {
+		DuplicateMessageFilter filter = new DuplicateMessageFilter(64, 10);
+		for (long i = 0; i < 10; i++) {
+			assertTrue(filter.accept(1, i));
+		}
+		assertFalse(filter.accept(1, 3));
+		assertFalse(filter.accept(1, 9));
+		assertTrue(filter.accept(1, 10));
+
+		assertEquals(11, filter.getAcceptedCount());
+		assertEquals(2, filter.getDuplicateCount());
+		assertEquals(0, filter.getGapCount());
+	}
+
+	/**
+	 * Test that out of order messages are accepted once and that
+	 * producers are tracked independently.
+	 */
+	@Test
+	public void testOutOfOrder() {
+		DuplicateMessageFilter filter = new DuplicateMessageFilter(64, 10);
+		assertTrue(filter.accept(1, 5));
+		assertTrue(filter.accept(2, 5));
+		assertTrue(filter.accept(1, 7));
+		assertTrue(filter.accept(1, 6));
+		assertFalse(filter.accept(1, 6));
+		assertFalse(filter.accept(2, 5));
+
+		assertEquals(2, filter.getDuplicateCount());
+		assertEquals(2, filter.getProducerCount());
+	}
+
+	/**
+	 * Test that sequence ids leaving the window without being
+	 * received are counted as gaps.
+	 */
+	@Test
+	public void testGaps() {
+		DuplicateMessageFilter filter = new DuplicateMessageFilter(64, 10);
+		for (long i = 0; i < 100; i++) {
+			if (i != 10 && i != 20) {
+				filter.accept(1, i);
+			}
+		}
+		assertEquals(2, filter.getGapCount());
+
+		// jump past the window; 100 to 936 are skipped over
+		filter.accept(1, 1000);
+		assertEquals(2 + 837, filter.getGapCount());
+	}
+
+	/**
+	 * Test that messages older than the window are accepted and counted as late.
+	 */
+	@Test
+	public void testLate() {
+		DuplicateMessageFilter filter = new DuplicateMessageFilter(64, 10);
+		for (long i = 0; i < 200; i++) {
+			filter.accept(1, i);
+		}
+		assertTrue(filter.accept(1, 5));
+		assertEquals(1, filter.getLateCount());
+		assertEquals(0, filter.getDuplicateCount());
+	}
+
+	/**
+	 * Test that a message is only a duplicate once it has been marked.
+	 */
+	@Test
+	public void testMarkAfterPublish() {
+		DuplicateMessageFilter filter = new DuplicateMessageFilter(64, 10);
+		assertFalse(filter.isDuplicate(1, 0));
+		assertFalse(filter.isDuplicate(1, 0));
+		filter.mark(1, 0);
+		assertTrue(filter.isDuplicate(1, 0));
+		assertFalse(filter.isDuplicate(1, 1));
+
+		assertEquals(1, filter.getAcceptedCount());
+		assertEquals(1, filter.getDuplicateCount());
+	}
+
+	/**
+	 * Test that the least recently seen producer is evicted.
+	 */
+	@Test
+	public void testProducerEviction() {
+		DuplicateMessageFilter filter = new DuplicateMessageFilter(64, 2);
+		filter.accept(1, 0);
+		filter.accept(2, 0);
+		filter.accept(3, 0);
+		assertEquals(2, filter.getProducerCount());
+	}
+
+	/**
+	 * Test that the producer seen most recently is kept when another
+	 * producer is evicted, even if its previous message was from it too.
+	 */
+	@Test
+	public void testRecentProducerKept() {
+		DuplicateMessageFilter filter = new DuplicateMessageFilter(64, 2);
+		filter.mark(2, 0);
+		filter.mark(1, 0);
+		filter.isDuplicate(2, 1);
+		filter.mark(1, 1);
+		filter.mark(3, 0);
+		assertTrue(filter.isDuplicate(1, 1));
+		assertFalse(filter.isDuplicate(2, 0));
+	}
+
+	/**
+	 * Log the time taken to filter in order messages.
+	 */
+	@Test
+	public void testThroughput() {
+		DuplicateMessageFilter filter = new DuplicateMessageFilter(DuplicateMessageFilter.DEFAULT_WINDOW_SIZE,
+				DuplicateMessageFilter.DEFAULT_MAX_PRODUCERS);
+		int count = 10000000;
+		long start = System.nanoTime();
+		for (long i = 0; i < count; i++) {
+			filter.accept(1, i);
+		}
+		long elapsed = System.nanoTime() - start;
+		logger.info("Filtered {} messages in {} ms ({} ns per message)",
+				count, elapsed / 1000000, elapsed / count);
+		assertEquals(count, filter.getAcceptedCount());
+	}
+
+}
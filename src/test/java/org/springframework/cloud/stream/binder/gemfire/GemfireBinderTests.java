@@ -28,8 +28,13 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.gemstone.gemfire.cache.Cache;
+import com.gemstone.gemfire.cache.EntryEvent;
+import com.gemstone.gemfire.cache.Region;
+import com.gemstone.gemfire.cache.partition.PartitionRegionHelper;
+import com.gemstone.gemfire.cache.util.CacheListenerAdapter;
 import com.gemstone.gemfire.distributed.LocatorLauncher;
 import com.oracle.tools.runtime.LocalPlatform;
 import com.oracle.tools.runtime.PropertiesBuilder;
@@ -115,6 +120,220 @@ public class GemfireBinderTests {
 		testMessageSendReceive(new String[]{"a", "b"}, false);
 	}
 
+	/**
+	 * Test batched message sending.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testBatchedMessageSendReceive() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("batching", "true");
+		testMessageSendReceive(new String[]{"a", "b"}, false, properties);
+	}
+
+	/**
+	 * Test concurrent message sending to multiple consumer groups.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testParallelFanOutMessageSendReceive() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("fanOutMode", FanOutMode.PARALLEL.name());
+		testMessageSendReceive(new String[]{"a", "b", "c"}, false, properties);
+	}
+
+	/**
+	 * Test sending messages by function execution instead of region puts.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testFunctionTransportMessageSendReceive() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("transportMode", TransportMode.FUNCTION.name());
+		testMessageSendReceive(new String[]{"a", "b"}, false, properties);
+	}
+
+	/**
+	 * Test sending a message to multiple consumer groups that share
+	 * a single stored copy of the message.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSharedPayloadMessageSendReceive() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("sharedPayloads", "true");
+		testMessageSendReceive(new String[]{"a", "b", "c"}, false, properties);
+	}
+
+	/**
+	 * Test batched message sending with batches grouped by member.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testMemberGroupedMessageSendReceive() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("batching", "true");
+		properties.setProperty("memberGrouping", "true");
+		testMessageSendReceive(new String[]{"a", "b"}, false, properties);
+	}
+
+	/**
+	 * Test sending a message with a compressed payload.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompressedMessageSendReceive() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("compress", "true");
+		testMessageSendReceive(null, false, properties);
+	}
+
+	/**
+	 * Test that messages are removed from the consumer region once
+	 * they have been consumed, so that the region does not grow
+	 * over the lifetime of a stream.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConsumedMessagesRemoved() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("batching", "true");
+		testMessagesConsumed(properties, 10000);
+	}
+
+	/**
+	 * Test that batched messages packed into envelopes by the producer
+	 * are unpacked by the consumer, and that each envelope is removed
+	 * once its messages have been consumed.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEnvelopedMessagesConsumed() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("batching", "true");
+		properties.setProperty("envelopeSize", "10");
+		testMessagesConsumed(properties, 10000);
+	}
+
+	/**
+	 * Test receiving batched messages packed into envelopes with
+	 * {@link DeliveryMode#LISTENER}. The hand-off queue holds a single
+	 * message, so the listener waits for the queue to drain.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testListenerDeliveryMessagesConsumed() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("batching", "true");
+		properties.setProperty("envelopeSize", "10");
+		properties.setProperty("deliveryMode", DeliveryMode.LISTENER.name());
+		properties.setProperty("handOffCapacity", "1");
+		testMessagesConsumed(properties, 10000);
+	}
+
+	/**
+	 * Send messages to a single consumer, and test that all of them are
+	 * received and removed from the consumer region.
+	 *
+	 * @param systemProperties additional system properties for the launched applications
+	 * @param messageCount number of messages to send
+	 * @throws Exception
+	 */
+	private void testMessagesConsumed(Properties systemProperties, int messageCount) throws Exception {
+		LocatorLauncher locatorLauncher = null;
+		JavaApplication consumer = null;
+		JavaApplication producer = null;
+		int locatorPort = SocketUtils.findAvailableServerSocket();
+
+		try {
+			locatorLauncher = startLocator(locatorPort);
+
+			Properties moduleProperties = new Properties();
+			moduleProperties.putAll(systemProperties);
+			moduleProperties.setProperty("gemfire.locators", String.format("localhost[%d]", locatorPort));
+			moduleProperties.setProperty("messageCount", String.valueOf(messageCount));
+
+			consumer = launch(Consumer.class, moduleProperties, null);
+			waitForConsumer(consumer);
+			producer = launch(Producer.class, moduleProperties, null);
+
+			long start = System.currentTimeMillis();
+			while (System.currentTimeMillis() < start + TIMEOUT
+					&& consumer.submit(new ConsumerMessageCounter()) < messageCount) {
+				Thread.sleep(1000);
+			}
+			assertEquals(messageCount, (int) consumer.submit(new ConsumerMessageCounter()));
+
+			start = System.currentTimeMillis();
+			while (System.currentTimeMillis() < start + TIMEOUT
+					&& consumer.submit(new ConsumerRegionSizeChecker()) > 0) {
+				Thread.sleep(1000);
+			}
+			assertEquals(0, (int) consumer.submit(new ConsumerRegionSizeChecker()));
+		}
+		finally {
+			if (producer != null) {
+				producer.close();
+			}
+			if (consumer != null) {
+				consumer.close();
+			}
+			if (locatorLauncher != null) {
+				locatorLauncher.stop();
+			}
+			cleanLocatorFiles(locatorPort);
+		}
+	}
+
+	/**
+	 * Test that messages sent to a consumer bound in the same process are
+	 * delivered to it without being written to the consumer region.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testLocalDelivery() throws Exception {
+		LocatorLauncher locatorLauncher = null;
+		JavaApplication application = null;
+		int locatorPort = SocketUtils.findAvailableServerSocket();
+		int messageCount = 100;
+
+		try {
+			locatorLauncher = startLocator(locatorPort);
+
+			Properties moduleProperties = new Properties();
+			moduleProperties.setProperty("gemfire.locators", String.format("localhost[%d]", locatorPort));
+			moduleProperties.setProperty("messageCount", String.valueOf(messageCount));
+			application = launch(LocalDeliveryApplication.class, moduleProperties, null);
+
+			long start = System.currentTimeMillis();
+			while (System.currentTimeMillis() < start + TIMEOUT
+					&& application.submit(new LocalDeliveryReceivedCounter()) < messageCount) {
+				Thread.sleep(1000);
+			}
+			assertEquals(messageCount, (int) application.submit(new LocalDeliveryReceivedCounter()));
+			assertEquals(0, (int) application.submit(new LocalDeliveryRegionWriteCounter()));
+		}
+		finally {
+			if (application != null) {
+				application.close();
+			}
+			if (locatorLauncher != null) {
+				locatorLauncher.stop();
+			}
+			cleanLocatorFiles(locatorPort);
+		}
+	}
+
 	/**
 	 * Test message sending functionality.
 	 *
@@ -122,22 +341,29 @@ public class GemfireBinderTests {
 	 * @throws Exception
 	 */
 	private void testMessageSendReceive(String[] groups, boolean partitioned) throws Exception {
+		testMessageSendReceive(groups, partitioned, new Properties());
+	}
+
+	/**
+	 * Test message sending functionality.
+	 *
+	 * @param groups consumer groups; may be {@code null}
+	 * @param partitioned if {@code true}, the producer uses a partition selector
+	 * @param systemProperties additional system properties for the launched applications
+	 * @throws Exception
+	 */
+	private void testMessageSendReceive(String[] groups, boolean partitioned,
+			Properties systemProperties) throws Exception {
 		LocatorLauncher locatorLauncher = null;
 		JavaApplication[] consumers = new JavaApplication[groups == null ? 1 : groups.length];
 		JavaApplication producer = null;
 		int locatorPort = SocketUtils.findAvailableServerSocket();
 
 		try {
-			locatorLauncher = new LocatorLauncher.Builder()
-					.setMemberName(LOCATOR_NAME)
-					.setPort(locatorPort)
-					.setRedirectOutput(true)
-					.build();
-
-			locatorLauncher.start();
-			locatorLauncher.waitOnStatusResponse(TIMEOUT, 5, TimeUnit.MILLISECONDS);
+			locatorLauncher = startLocator(locatorPort);
 
 			Properties moduleProperties = new Properties();
+			moduleProperties.putAll(systemProperties);
 			moduleProperties.setProperty("gemfire.locators", String.format("localhost[%d]", locatorPort));
 			if (partitioned) {
 				moduleProperties.setProperty("partitioned", "true");
@@ -177,6 +403,24 @@ public class GemfireBinderTests {
 		}
 	}
 
+	/**
+	 * Start a GemFire Locator.
+	 *
+	 * @param port port for the locator to listen on
+	 * @return the started locator
+	 */
+	private LocatorLauncher startLocator(int port) {
+		LocatorLauncher locatorLauncher = new LocatorLauncher.Builder()
+				.setMemberName(LOCATOR_NAME)
+				.setPort(port)
+				.setRedirectOutput(true)
+				.build();
+
+		locatorLauncher.start();
+		locatorLauncher.waitOnStatusResponse(TIMEOUT, 5, TimeUnit.MILLISECONDS);
+		return locatorLauncher;
+	}
+
 	/**
 	 * Remove the files generated by the GemFire Locator.
 	 */
@@ -346,6 +590,26 @@ public class GemfireBinderTests {
 				System.out.println("setting partition selector");
 				binder.setPartitionSelector(partitionSelectorStrategy);
 			}
+			if (Boolean.getBoolean("batching")) {
+				binder.setProducerBatchingEnabled(true);
+			}
+			if (Boolean.getBoolean("compress")) {
+				binder.setProducerCompress(true);
+				binder.setCompressionThreshold(0);
+			}
+			if (System.getProperty("fanOutMode") != null) {
+				binder.setProducerFanOutMode(FanOutMode.valueOf(System.getProperty("fanOutMode")));
+			}
+			if (Boolean.getBoolean("sharedPayloads")) {
+				binder.setSharedPayloads(true);
+			}
+			if (Boolean.getBoolean("memberGrouping")) {
+				binder.setProducerMemberGrouping(true);
+			}
+			if (System.getProperty("transportMode") != null) {
+				binder.setProducerTransportMode(TransportMode.valueOf(System.getProperty("transportMode")));
+			}
+			binder.setProducerEnvelopeSize(Integer.getInteger("envelopeSize", 1));
 			binder.afterPropertiesSet();
 
 			SubscribableChannel producerChannel = new ExecutorSubscribableChannel();
@@ -354,8 +618,11 @@ public class GemfireBinderTests {
 			properties.setProperty(BinderPropertyKeys.PARTITION_KEY_EXPRESSION, "payload");
 			binder.bindProducer(BINDING_NAME, producerChannel, properties);
 
-			Message<String> message = new GenericMessage<>(MESSAGE_PAYLOAD);
-			producerChannel.send(message);
+			int messageCount = Integer.getInteger("messageCount", 1);
+			for (int i = 0; i < messageCount; i++) {
+				Message<String> message = new GenericMessage<>(MESSAGE_PAYLOAD);
+				producerChannel.send(message);
+			}
 
 			Thread.sleep(Long.MAX_VALUE);
 		}
@@ -377,6 +644,16 @@ public class GemfireBinderTests {
 		 */
 		private static volatile String messagePayload;
 
+		/**
+		 * Number of received messages.
+		 */
+		private static final AtomicInteger messageCount = new AtomicInteger();
+
+		/**
+		 * Cache used by the consumer.
+		 */
+		private static volatile Cache cache;
+
 		/**
 		 * Main method.
 		 *
@@ -384,10 +661,16 @@ public class GemfireBinderTests {
 		 * @throws Exception
 		 */
 		public static void main(String[] args) throws Exception {
-			GemfireMessageChannelBinder binder = new GemfireMessageChannelBinder(createCache());
+			cache = createCache();
+			GemfireMessageChannelBinder binder = new GemfireMessageChannelBinder(cache);
 			binder.setApplicationContext(new GenericApplicationContext());
 			binder.setIntegrationEvaluationContext(new StandardEvaluationContext());
 			binder.setBatchSize(1);
+			binder.setSharedPayloads(Boolean.getBoolean("sharedPayloads"));
+			if (System.getProperty("deliveryMode") != null) {
+				binder.setConsumerDeliveryMode(DeliveryMode.valueOf(System.getProperty("deliveryMode")));
+			}
+			binder.setConsumerHandOffCapacity(Integer.getInteger("handOffCapacity", 1024));
 			binder.afterPropertiesSet();
 
 			SubscribableChannel consumerChannel = new ExecutorSubscribableChannel();
@@ -395,6 +678,7 @@ public class GemfireBinderTests {
 				@Override
 				public void handleMessage(Message<?> message) throws MessagingException {
 					messagePayload = (String) message.getPayload();
+					messageCount.incrementAndGet();
 				}
 			});
 			String group = null;
@@ -422,6 +706,93 @@ public class GemfireBinderTests {
 		}
 	}
 
+	public static class ConsumerMessageCounter implements RemoteCallable<Integer> {
+		@Override
+		public Integer call() throws Exception {
+			return Consumer.messageCount.get();
+		}
+	}
+
+	public static class ConsumerRegionSizeChecker implements RemoteCallable<Integer> {
+		@Override
+		public Integer call() throws Exception {
+			Region<?, ?> region = Consumer.cache.getRegion(GemfireMessageChannelBinder.createMessageRegionName(
+					BINDING_NAME, GemfireMessageChannelBinder.DEFAULT_CONSUMER_GROUP));
+			return region.size();
+		}
+	}
+
+	/**
+	 * Application that binds a consumer and a producer with local delivery
+	 * to the same {@link GemfireMessageChannelBinder}, sends test messages
+	 * and counts the messages received and the entries created in the
+	 * consumer region.
+	 */
+	public static class LocalDeliveryApplication {
+
+		/**
+		 * Number of received messages.
+		 */
+		private static final AtomicInteger messageCount = new AtomicInteger();
+
+		/**
+		 * Number of entries created in the consumer region.
+		 */
+		private static final AtomicInteger regionWriteCount = new AtomicInteger();
+
+		public static void main(String[] args) throws Exception {
+			Cache cache = createCache();
+			GemfireMessageChannelBinder binder = new GemfireMessageChannelBinder(cache);
+			binder.setApplicationContext(new GenericApplicationContext());
+			binder.setIntegrationEvaluationContext(new StandardEvaluationContext());
+			binder.setProducerLocalDelivery(true);
+			binder.afterPropertiesSet();
+
+			SubscribableChannel consumerChannel = new ExecutorSubscribableChannel();
+			consumerChannel.subscribe(new MessageHandler() {
+				@Override
+				public void handleMessage(Message<?> message) throws MessagingException {
+					messageCount.incrementAndGet();
+				}
+			});
+			binder.bindConsumer(BINDING_NAME, null, consumerChannel, new Properties());
+
+			Region<Object, Object> region = cache.getRegion(GemfireMessageChannelBinder.createMessageRegionName(
+					BINDING_NAME, GemfireMessageChannelBinder.DEFAULT_CONSUMER_GROUP));
+			// create all buckets so that this member is the primary for every key
+			PartitionRegionHelper.assignBucketsToPartitions(region);
+			region.getAttributesMutator().addCacheListener(new CacheListenerAdapter<Object, Object>() {
+				@Override
+				public void afterCreate(EntryEvent<Object, Object> event) {
+					regionWriteCount.incrementAndGet();
+				}
+			});
+
+			SubscribableChannel producerChannel = new ExecutorSubscribableChannel();
+			binder.bindProducer(BINDING_NAME, producerChannel, new Properties());
+			int count = Integer.getInteger("messageCount", 1);
+			for (int i = 0; i < count; i++) {
+				producerChannel.send(new GenericMessage<>(MESSAGE_PAYLOAD));
+			}
+
+			Thread.sleep(Long.MAX_VALUE);
+		}
+	}
+
+	public static class LocalDeliveryReceivedCounter implements RemoteCallable<Integer> {
+		@Override
+		public Integer call() throws Exception {
+			return LocalDeliveryApplication.messageCount.get();
+		}
+	}
+
+	public static class LocalDeliveryRegionWriteCounter implements RemoteCallable<Integer> {
+		@Override
+		public Integer call() throws Exception {
+			return LocalDeliveryApplication.regionWriteCount.get();
+		}
+	}
+
 	public static class ProducerPartitionSelectorChecker implements RemoteCallable<Boolean> {
 		@Override
 		public Boolean call() throws Exception {
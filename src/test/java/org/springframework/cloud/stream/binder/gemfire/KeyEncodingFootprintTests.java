@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.gemstone.gemfire.DataSerializer;
+import com.gemstone.gemfire.cache.Cache;
+import com.gemstone.gemfire.cache.CacheFactory;
+import com.gemstone.gemfire.cache.PartitionAttributesFactory;
+import com.gemstone.gemfire.cache.Region;
+import com.gemstone.gemfire.cache.RegionShortcut;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+/**
+ * Compare the heap used by in flight messages stored under a
+ * {@link MessageKey} ({@link KeyEncoding#OBJECT}) and under a compact
+ * key ({@link KeyEncoding#LONG}) in a single member. Values are stored
+ * as {@code byte[]} of the serialized size of the message, as they are
+ * on a member receiving them from a producer.
+ * <p>
+ * Also tests the keys generated by {@link CompactKeyGenerator}.
+ *
+ * @author Patrick Peralta
+ */
+public class KeyEncodingFootprintTests {
+	private static final Logger logger = LoggerFactory.getLogger(KeyEncodingFootprintTests.class);
+
+	/**
+	 * Number of messages stored for each encoding.
+	 */
+	private static final int MESSAGES = 200000;
+
+	private static Cache cache;
+
+	@BeforeClass
+	public static void createCache() {
+		GemfireSerializers.register();
+		cache = new CacheFactory()
+				.set("mcast-port", "0")
+				.set("locators", "")
+				.set("log-level", "warning")
+				.create();
+	}
+
+	@AfterClass
+	public static void closeCache() {
+		if (cache != null) {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Test that compact keys use less heap than message keys for the same
+	 * number of messages, and log the heap used per message for both.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompareFootprint() throws Exception {
+		MessageKey sample = new MessageKey(0, System.currentTimeMillis(), 42);
+		Message<?> message = MessageBuilder.withPayload("{\"value\":1}".getBytes()).build();
+		int valueSize = serializedSize(message);
+
+		Region<MessageKey, byte[]> objectRegion = createRegion("object");
+		long before = usedHeap();
+		for (int i = 0; i < MESSAGES; i++) {
+			objectRegion.put(new MessageKey(i, sample.getProducerTimestamp(), 42), new byte[valueSize]);
+		}
+		long objectHeap = usedHeap() - before;
+		assertEquals(MESSAGES, objectRegion.size());
+		objectRegion.destroyRegion();
+
+		Region<Long, byte[]> compactRegion = createRegion("compact");
+		Region<String, Long> blockRegion = cache.<String, Long>createRegionFactory(RegionShortcut.REPLICATE)
+				.create("blocks");
+		CompactKeyGenerator generator = new CompactKeyGenerator(blockRegion, "compact",
+				CompactKeyGenerator.DEFAULT_BLOCK_SIZE);
+		int bucketCount = compactRegion.getAttributes().getPartitionAttributes().getTotalNumBuckets();
+		before = usedHeap();
+		for (int i = 0; i < MESSAGES; i++) {
+			MessageKey key = new MessageKey(i, sample.getProducerTimestamp(), 42);
+			compactRegion.put(generator.next(key.getRoutingHash(), bucketCount), new byte[valueSize]);
+		}
+		long compactHeap = usedHeap() - before;
+		assertEquals(MESSAGES, compactRegion.size());
+		compactRegion.destroyRegion();
+		blockRegion.destroyRegion();
+
+		logger.info("Heap used by {} messages with {} byte values; object keys: {} MB ({} bytes per message), "
+						+ "compact keys: {} MB ({} bytes per message)",
+				MESSAGES, valueSize, objectHeap >> 20, objectHeap / MESSAGES,
+				compactHeap >> 20, compactHeap / MESSAGES);
+		assertTrue(compactHeap < objectHeap);
+	}
+
+	/**
+	 * Test that generators sharing a counter produce unique keys that
+	 * hold the bucket of the message key.
+	 */
+	@Test
+	public void testCompactKeys() {
+		Region<String, Long> blockRegion = cache.<String, Long>createRegionFactory(RegionShortcut.REPLICATE)
+				.create("unique-blocks");
+		CompactKeyGenerator first = new CompactKeyGenerator(blockRegion, "binding", 10);
+		CompactKeyGenerator second = new CompactKeyGenerator(blockRegion, "binding", 10);
+		Set<Long> keys = new HashSet<>();
+		for (int i = 0; i < 100; i++) {
+			int routingHash = -1000 + 37 * i;
+			long key = (i % 2 == 0 ? first : second).next(routingHash, 113);
+			assertTrue(keys.add(key));
+			assertEquals(Math.abs(routingHash % 113), CompactKeyGenerator.getBucket(key));
+		}
+		blockRegion.destroyRegion();
+	}
+
+	@SuppressWarnings("unchecked")
+	private <K> Region<K, byte[]> createRegion(String name) {
+		return cache.<K, byte[]>createRegionFactory(RegionShortcut.PARTITION)
+				.setPartitionAttributes(new PartitionAttributesFactory()
+						.setPartitionResolver(new MessageKeyPartitionResolver()).create())
+				.create(name);
+	}
+
+	private static int serializedSize(Object o) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataSerializer.writeObject(o, new DataOutputStream(bytes));
+		return bytes.size();
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
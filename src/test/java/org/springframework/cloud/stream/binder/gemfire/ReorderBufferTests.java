@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * Tests for {@link ReorderBuffer}.
+ *
+ * @author Patrick Peralta
+ */
+public class ReorderBufferTests {
+
+	private static final long PRODUCER_ID = 1;
+
+	/**
+	 * Test that messages received in order are released immediately.
+	 */
+	@Test
+	public void testInOrder() {
+		CollectingHandler handler = new CollectingHandler();
+		ReorderBuffer buffer = new ReorderBuffer(handler, 10, 60000, 10);
+		add(buffer, 0, 1, 2, 3);
+
+		assertEquals(Arrays.asList(0L, 1L, 2L, 3L), handler.payloads);
+		assertEquals(0, buffer.getBufferedCount());
+		assertEquals(0, buffer.getDelayedCount());
+	}
+
+	/**
+	 * Test that messages received out of order are released in order
+	 * once the gap before them is filled.
+	 */
+	@Test
+	public void testOutOfOrder() {
+		CollectingHandler handler = new CollectingHandler();
+		ReorderBuffer buffer = new ReorderBuffer(handler, 10, 60000, 10);
+		add(buffer, 0, 2, 3);
+
+		assertEquals(Arrays.asList(0L), handler.payloads);
+		assertEquals(2, buffer.getBufferedCount());
+
+		add(buffer, 1);
+		assertEquals(Arrays.asList(0L, 1L, 2L, 3L), handler.payloads);
+		assertEquals(0, buffer.getBufferedCount());
+		assertEquals(2, buffer.getDelayedCount());
+		assertEquals(0, buffer.getSkippedGapCount());
+	}
+
+	/**
+	 * Test that sequences from different producers are ordered independently.
+	 */
+	@Test
+	public void testProducersIndependent() {
+		CollectingHandler handler = new CollectingHandler();
+		ReorderBuffer buffer = new ReorderBuffer(handler, 10, 60000, 10);
+		buffer.add(1, 0, new GenericMessage<Long>(10L));
+		buffer.add(2, 5, new GenericMessage<Long>(25L));
+		buffer.add(1, 2, new GenericMessage<Long>(12L));
+		buffer.add(2, 6, new GenericMessage<Long>(26L));
+		buffer.add(1, 1, new GenericMessage<Long>(11L));
+
+		assertEquals(Arrays.asList(10L, 25L, 26L, 11L, 12L), handler.payloads);
+	}
+
+	/**
+	 * Test that a gap is skipped when the buffer for a producer is full,
+	 * and that a message arriving after its gap was skipped is counted as late.
+	 */
+	@Test
+	public void testCapacity() {
+		CollectingHandler handler = new CollectingHandler();
+		ReorderBuffer buffer = new ReorderBuffer(handler, 2, 60000, 10);
+		add(buffer, 0, 2, 3);
+		assertEquals(Arrays.asList(0L), handler.payloads);
+
+		add(buffer, 4);
+		assertEquals(Arrays.asList(0L, 2L, 3L, 4L), handler.payloads);
+		assertEquals(1, buffer.getSkippedGapCount());
+
+		add(buffer, 1);
+		assertEquals(Arrays.asList(0L, 2L, 3L, 4L, 1L), handler.payloads);
+		assertEquals(1, buffer.getLateCount());
+	}
+
+	/**
+	 * Test that a gap is skipped once the gap timeout elapses.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGapTimeout() throws Exception {
+		CollectingHandler handler = new CollectingHandler();
+		ReorderBuffer buffer = new ReorderBuffer(handler, 10, 50, 10);
+		add(buffer, 0, 2);
+		buffer.expire();
+		assertEquals(Arrays.asList(0L), handler.payloads);
+
+		Thread.sleep(100);
+		buffer.expire();
+		assertEquals(Arrays.asList(0L, 2L), handler.payloads);
+		assertEquals(1, buffer.getSkippedGapCount());
+		assertEquals(1, buffer.getDelayedCount());
+	}
+
+	/**
+	 * Test that all buffered messages are released in order.
+	 */
+	@Test
+	public void testReleaseAll() {
+		CollectingHandler handler = new CollectingHandler();
+		ReorderBuffer buffer = new ReorderBuffer(handler, 10, 60000, 10);
+		add(buffer, 0, 5, 3);
+		buffer.releaseAll();
+
+		assertEquals(Arrays.asList(0L, 3L, 5L), handler.payloads);
+		assertEquals(0, buffer.getBufferedCount());
+		assertEquals(2, buffer.getSkippedGapCount());
+	}
+
+	/**
+	 * Test that the least recently seen producer is evicted and its
+	 * buffered messages are released.
+	 */
+	@Test
+	public void testProducerEviction() {
+		CollectingHandler handler = new CollectingHandler();
+		ReorderBuffer buffer = new ReorderBuffer(handler, 10, 60000, 2);
+		add(buffer, 0, 2);
+		buffer.add(2, 10, new GenericMessage<Long>(10L));
+		assertEquals(Arrays.asList(0L, 10L), handler.payloads);
+
+		buffer.add(3, 20, new GenericMessage<Long>(20L));
+		assertEquals(Arrays.asList(0L, 10L, 2L, 20L), handler.payloads);
+		assertEquals(2, buffer.getProducerCount());
+		assertEquals(0, buffer.getBufferedCount());
+	}
+
+	private static void add(ReorderBuffer buffer, long... sequenceIds) {
+		for (long sequenceId : sequenceIds) {
+			buffer.add(PRODUCER_ID, sequenceId, new GenericMessage<Long>(sequenceId));
+		}
+	}
+
+
+	/**
+	 * Handler that collects the payloads of released messages.
+	 */
+	private static class CollectingHandler implements MessageHandler {
+
+		private final List<Long> payloads = new ArrayList<>();
+
+		@Override
+		public void handleMessage(Message<?> message) throws MessagingException {
+			this.payloads.add((Long) message.getPayload());
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests for {@link SequenceGenerator}.
+ *
+ * @author Patrick Peralta
+ */
+public class SequenceGeneratorTests {
+	private static final Logger logger = LoggerFactory.getLogger(SequenceGeneratorTests.class);
+
+	/**
+	 * Number of ids generated by each thread.
+	 */
+	private static final int IDS_PER_THREAD = 100000;
+
+	/**
+	 * Test that ids are unique and increasing per thread with a block size of 1.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSharedSequence() throws Exception {
+		testUniqueOrderedIds(1, 4);
+	}
+
+	/**
+	 * Test that ids are unique and increasing per thread with block reservation.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testBlockSequence() throws Exception {
+		testUniqueOrderedIds(1000, 4);
+	}
+
+	/**
+	 * Test that a single thread generates contiguous ids regardless of block size.
+	 */
+	@Test
+	public void testSingleThreadContiguous() {
+		SequenceGenerator generator = new SequenceGenerator(64);
+		for (long i = 0; i < 1000; i++) {
+			assertEquals(i, generator.next());
+		}
+	}
+
+	/**
+	 * Log id generation throughput for increasing thread counts with a
+	 * shared sequence and with block reservation. This is a benchmark of
+	 * the generator alone, not of sending through {@link SendingHandler};
+	 * it does not assert on the results, so it is not run with the build.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	@Ignore("benchmark; run explicitly to compare block sizes")
+	public void testThroughputScaling() throws Exception {
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= processors * 2; threads *= 2) {
+			for (int blockSize : new int[] {1, 1024}) {
+				// warm up
+				generate(new SequenceGenerator(blockSize), threads);
+
+				long start = System.nanoTime();
+				generate(new SequenceGenerator(blockSize), threads);
+				long elapsed = System.nanoTime() - start;
+				logger.info("threads: {}, block size: {}, ids/ms: {}", threads, blockSize,
+						(long) threads * IDS_PER_THREAD * 1000000 / Math.max(elapsed, 1));
+			}
+		}
+	}
+
+	/**
+	 * Generate ids on multiple threads and assert that they are unique
+	 * and increasing for each thread.
+	 *
+	 * @param blockSize generator block size
+	 * @param threads number of threads
+	 * @throws Exception
+	 */
+	private void testUniqueOrderedIds(int blockSize, int threads) throws Exception {
+		List<long[]> results = generate(new SequenceGenerator(blockSize), threads);
+		Set<Long> ids = new HashSet<>();
+		for (long[] result : results) {
+			for (int i = 0; i < result.length; i++) {
+				assertTrue("Duplicate id " + result[i], ids.add(result[i]));
+				if (i > 0) {
+					assertTrue(result[i] > result[i - 1]);
+				}
+			}
+		}
+		assertEquals(threads * IDS_PER_THREAD, ids.size());
+	}
+
+	/**
+	 * Generate {@value #IDS_PER_THREAD} ids on each of the given number of threads.
+	 *
+	 * @param generator sequence generator
+	 * @param threads number of threads
+	 * @return ids generated by each thread, in generation order
+	 * @throws Exception
+	 */
+	private List<long[]> generate(final SequenceGenerator generator, int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final CountDownLatch latch = new CountDownLatch(1);
+			List<Future<long[]>> futures = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() throws Exception {
+						long[] ids = new long[IDS_PER_THREAD];
+						latch.await();
+						for (int j = 0; j < ids.length; j++) {
+							ids[j] = generator.next();
+						}
+						return ids;
+					}
+				}));
+			}
+			latch.countDown();
+
+			List<long[]> results = new ArrayList<>();
+			for (Future<long[]> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
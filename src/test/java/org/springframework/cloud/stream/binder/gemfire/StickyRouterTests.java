@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.stream.binder.gemfire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link StickyRouter}.
+ *
+ * @author Patrick Peralta
+ */
+public class StickyRouterTests {
+
+	/**
+	 * Test that a thread keeps its routing hash for the configured
+	 * number of messages, then rotates to the next one.
+	 */
+	@Test
+	public void testRotateAfterMessages() {
+		StickyRouter router = new StickyRouter(10, 0);
+		int hash = router.next();
+		for (int i = 1; i < 10; i++) {
+			assertEquals(hash, router.next());
+		}
+		int next = router.next();
+		assertEquals(hash + 1, next);
+		for (int i = 1; i < 10; i++) {
+			assertEquals(next, router.next());
+		}
+	}
+
+	/**
+	 * Test that a thread rotates once the period has elapsed.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRotateAfterPeriod() throws Exception {
+		StickyRouter router = new StickyRouter(0, 50);
+		int hash = router.next();
+		assertEquals(hash, router.next());
+		Thread.sleep(100);
+		assertNotEquals(hash, router.next());
+	}
+
+	/**
+	 * Test that threads are given different routing hashes.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testThreadsDiffer() throws Exception {
+		final StickyRouter router = new StickyRouter(1000, 0);
+		int hash = router.next();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			int other = executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return router.next();
+				}
+			}).get();
+			assertNotEquals(hash, other);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+}